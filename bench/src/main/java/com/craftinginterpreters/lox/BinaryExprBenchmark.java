@@ -0,0 +1,102 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// cost of one binary operator in the tree walker. run with the gc profiler
+// to see allocation per op:
+//   java -jar bench/target/benchmarks.jar BinaryExpr -prof gc
+// gc.alloc.rate.norm is bytes per binary op. with fastPath=false every
+// intermediate result is boxed; with it on only the statement's result is
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryExprBenchmark {
+    // binary operators per statement below
+    private static final int OPS = 64;
+
+    @Param({"true", "false"})
+    public boolean fastPath;
+
+    @Param({"literals", "variables"})
+    public String operands;
+
+    private Interpreter interpreter;
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        StringBuilder source = new StringBuilder("var a = 3; var b = 7; var x; x = 1");
+        for (int i = 0; i < OPS; i++) {
+            source.append(" ").append("+-*/".charAt(i % 4)).append(" ");
+            if (operands.equals("variables"))
+                source.append(i % 2 == 0 ? "a" : "b");
+            else
+                source.append(i + 1);
+        }
+        source.append(";");
+
+        ErrorReporter reporter = new ErrorReporter();
+        statements = new Parser(new Scanner(source.toString(), reporter).scanTokens(), reporter).parse();
+        new Resolver(reporter, new SymbolTable()).resolve(statements);
+        if (!fastPath)
+            clearNumeric(statements);
+
+        interpreter = new Interpreter(reporter);
+        interpreter.interpret(statements);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void binaryOp() {
+        // only the assignment, the declarations ran in setup
+        interpreter.interpret(statements.subList(3, 4));
+    }
+
+    // undo the Resolver's numeric marks so everything takes the boxed path
+    private static void clearNumeric(List<Stmt> statements) {
+        Expr.Visitor<Void> clear = new Expr.Visitor<Void>() {
+            public Void visitAssignExpr(Expr.Assign expr) {
+                expr.numeric = false;
+                return expr.value.accept(this);
+            }
+            public Void visitBinaryExpr(Expr.Binary expr) {
+                expr.numeric = false;
+                expr.left.accept(this);
+                return expr.right.accept(this);
+            }
+            public Void visitGroupingExpr(Expr.Grouping expr) {
+                expr.numeric = false;
+                return expr.expression.accept(this);
+            }
+            public Void visitLiteralExpr(Expr.Literal expr) {
+                expr.numeric = false;
+                return null;
+            }
+            public Void visitUnaryExpr(Expr.Unary expr) {
+                expr.numeric = false;
+                return expr.right.accept(this);
+            }
+            public Void visitVariableExpr(Expr.Variable expr) {
+                return null;
+            }
+            public Void visitVariableConstantExpr(Expr.VariableConstant expr) {
+                return expr.original.accept(this);
+            }
+            public Void visitVariableVariableExpr(Expr.VariableVariable expr) {
+                return expr.original.accept(this);
+            }
+            public Void visitIncrementExpr(Expr.Increment expr) {
+                return expr.original.accept(this);
+            }
+        };
+        for (Stmt statement : statements)
+            if (statement instanceof Stmt.Expression)
+                ((Stmt.Expression) statement).expression.accept(clear);
+    }
+}
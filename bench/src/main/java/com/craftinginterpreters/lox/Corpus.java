@@ -0,0 +1,154 @@
+package com.craftinginterpreters.lox;
+
+// generated Lox programs for the benchmarks. each kind stresses a
+// different part of the front end or the interpreter. none of them print,
+// so the interpreter benchmarks measure evaluation and not stdout
+final class Corpus {
+    static final String NESTING    = "nesting";
+    static final String ARITHMETIC = "arithmetic";
+    static final String VARIABLES  = "variables";
+    static final String STRINGS    = "strings";
+
+    private Corpus() {}
+
+    static String generate(String kind, int size) {
+        switch (kind) {
+            case NESTING:    return nesting(size);
+            case ARITHMETIC: return arithmetic(size);
+            case VARIABLES:  return variables(size);
+            case STRINGS:    return strings(size);
+        }
+        throw new IllegalArgumentException("unknown corpus: " + kind);
+    }
+
+    // blocks inside blocks, each reading the enclosing block's local, plus
+    // an expression nested in as many parentheses
+    private static String nesting(int size) {
+        int depth = Math.min(size, 200);
+        StringBuilder source = new StringBuilder();
+        for (int copy = 0; copy < Math.max(1, size / depth); copy++) {
+            source.append("var n0 = ").append(copy).append(";\n");
+            for (int i = 1; i <= depth; i++)
+                source.append("{ var n").append(i)
+                      .append(" = n").append(i - 1).append(" + 1;\n");
+            for (int i = 0; i < depth; i++)
+                source.append("}");
+            source.append("\nn0 = ");
+            for (int i = 0; i < depth; i++)
+                source.append("(-");
+            source.append("n0");
+            for (int i = 0; i < depth; i++)
+                source.append(")");
+            source.append(";\n");
+        }
+        return source.toString();
+    }
+
+    // long left leaning chains of every arithmetic operator
+    private static String arithmetic(int size) {
+        StringBuilder source = new StringBuilder("var x = 0;\n");
+        for (int line = 0; line < Math.max(1, size / 50); line++) {
+            source.append("x = ").append(line);
+            for (int i = 0; i < 50; i++) {
+                source.append(" ").append("+-*/".charAt(i % 4)).append(" ");
+                source.append(i % 5 == 0 ? "x" : String.valueOf(i + 1.5));
+            }
+            source.append(";\n");
+            source.append("x = x < 1000000;\nx = 0;\n");
+        }
+        return source.toString();
+    }
+
+    // lots of distinct globals, each defined from the one before
+    private static String variables(int size) {
+        StringBuilder source = new StringBuilder("var v0 = 0;\n");
+        for (int i = 1; i < size; i++)
+            source.append("var v").append(i).append(" = v").append(i - 1)
+                  .append(" + 1;\n");
+        for (int i = 1; i < size; i++)
+            source.append("v").append(i).append(" = v").append(size - i)
+                  .append(";\n");
+        return source.toString();
+    }
+
+    // a few big string literals, concatenated together
+    private static String strings(int size) {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; literal.length() < 4096; i++)
+            literal.append("lorem ipsum ").append(i).append(' ');
+
+        StringBuilder source = new StringBuilder("var s = \"\";\n");
+        for (int i = 0; i < Math.max(1, size / 100); i++) {
+            source.append("var s").append(i).append(" = \"")
+                  .append(literal).append("\";\n");
+            source.append("s = s").append(i).append(" + \"")
+                  .append(literal).append("\";\n");
+        }
+        return source.toString();
+    }
+
+    // how many Stmt and Expr nodes a parsed program has
+    static long countNodes(java.util.List<Stmt> statements) {
+        NodeCounter counter = new NodeCounter();
+        for (Stmt statement : statements)
+            statement.accept(counter);
+        return counter.count;
+    }
+
+    private static class NodeCounter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        long count = 0;
+
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            count++;
+            for (Stmt statement : stmt.statements)
+                statement.accept(this);
+            return null;
+        }
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            count++;
+            return stmt.expression.accept(this);
+        }
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            count++;
+            return stmt.expression.accept(this);
+        }
+        public Void visitVarStmt(Stmt.Var stmt) {
+            count++;
+            return stmt.initializer == null ? null : stmt.initializer.accept(this);
+        }
+        public Void visitAssignExpr(Expr.Assign expr) {
+            count++;
+            return expr.value.accept(this);
+        }
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            count++;
+            expr.left.accept(this);
+            return expr.right.accept(this);
+        }
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            count++;
+            return expr.expression.accept(this);
+        }
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            count++;
+            return null;
+        }
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            count++;
+            return expr.right.accept(this);
+        }
+        public Void visitVariableExpr(Expr.Variable expr) {
+            count++;
+            return null;
+        }
+        public Void visitVariableConstantExpr(Expr.VariableConstant expr) {
+            return expr.original.accept(this);
+        }
+        public Void visitVariableVariableExpr(Expr.VariableVariable expr) {
+            return expr.original.accept(this);
+        }
+        public Void visitIncrementExpr(Expr.Increment expr) {
+            return expr.original.accept(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// scanning and parsing throughput over the generated corpus.
+// the aux counters turn up in the results as rates:
+//   scan:  megabytes  -> MB/s of source scanned
+//   parse: nodes      -> syntax tree nodes/s produced
+// parallelParse is parse split up by ParallelParser, so it only pulls
+// ahead with more than one core
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({Corpus.NESTING, Corpus.ARITHMETIC, Corpus.VARIABLES, Corpus.STRINGS})
+    public String corpus;
+
+    @Param({"5000"})
+    public int size;
+
+    private final ErrorReporter reporter = new ErrorReporter();
+    private String source;
+    private double sourceMegabytes;
+    private List<Token> tokens;
+    private long nodes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Scanned {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Parsed {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        source = Corpus.generate(corpus, size);
+        sourceMegabytes = source.getBytes(StandardCharsets.UTF_8).length / 1e6;
+        tokens = new Scanner(source, reporter).scanTokens();
+        nodes = Corpus.countNodes(new Parser(tokens, reporter).parse());
+    }
+
+    @Benchmark
+    public List<Token> scan(Scanned scanned) {
+        scanned.megabytes += sourceMegabytes;
+        return new Scanner(source, reporter).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse(Parsed parsed) {
+        parsed.nodes += nodes;
+        return new Parser(tokens, reporter).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> parallelParse(Parsed parsed) {
+        parsed.nodes += nodes;
+        return ParallelParser.parse(tokens);
+    }
+}
@@ -0,0 +1,70 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// end to end evaluation of an already parsed and resolved program,
+// once per invocation, on each backend
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({Corpus.NESTING, Corpus.ARITHMETIC, Corpus.VARIABLES, Corpus.STRINGS})
+    public String corpus;
+
+    @Param({"5000"})
+    public int size;
+
+    private List<Stmt> statements;
+    private List<Stmt> fused;
+    private Chunk chunk;
+    private FlatAst flatAst;
+    private Interpreter interpreter;
+    private FlatInterpreter flat;
+    private VM vm;
+
+    @Setup
+    public void setup() {
+        ErrorReporter reporter = new ErrorReporter();
+        statements = new Parser(new Scanner(Corpus.generate(corpus, size), reporter).scanTokens(), reporter).parse();
+        new Resolver(reporter, new SymbolTable()).resolve(statements);
+        if (reporter.hadError)
+            throw new IllegalStateException("corpus " + corpus + " doesn't compile");
+
+        chunk = new Compiler(reporter).compile(statements);
+        flatAst = FlatAst.of(statements);
+        fused = new NodeFuser().fuse(statements);
+        interpreter = new Interpreter(reporter);
+        flat = new FlatInterpreter(reporter);
+        vm = new VM(reporter);
+
+        interpreter.interpret(statements);
+        if (reporter.hadRuntimeError)
+            throw new IllegalStateException("corpus " + corpus + " fails at runtime");
+    }
+
+    @Benchmark
+    public void treeWalk() {
+        interpreter.interpret(statements);
+    }
+
+    @Benchmark
+    public void treeWalkFused() {
+        interpreter.interpret(fused);
+    }
+
+    @Benchmark
+    public void flatTree() {
+        flat.interpret(flatAst);
+    }
+
+    @Benchmark
+    public void bytecode() {
+        vm.interpret(chunk);
+    }
+}
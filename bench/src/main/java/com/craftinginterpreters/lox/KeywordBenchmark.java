@@ -0,0 +1,65 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// classifying identifier-shaped words as keyword or not. 'trie' is what
+// Scanner.identifier() does now; 'map' is the old substring + HashMap probe
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordBenchmark {
+    private static final int WORDS = 4096;
+
+    // share of the words that are keywords, the rest are variable names
+    @Param({"0.25"})
+    public double keywordShare;
+
+    private char[] chars;
+    private int[] starts = new int[WORDS];
+    private int[] lengths = new int[WORDS];
+
+    @Setup
+    public void setup() {
+        String[] keywords = Scanner.keywords.keySet().toArray(new String[0]);
+        String[] names = {"i", "count", "total", "value", "orange", "this_x",
+                          "fooBar", "varName", "trueish", "print2", "nilly"};
+        Random random = new Random(42);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS; i++) {
+            String word = random.nextDouble() < keywordShare
+                ? keywords[random.nextInt(keywords.length)]
+                : names[random.nextInt(names.length)];
+            starts[i] = text.length();
+            lengths[i] = word.length();
+            text.append(word).append(' ');
+        }
+        chars = text.toString().toCharArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public int trie() {
+        int keywords = 0;
+        for (int i = 0; i < WORDS; i++)
+            if (Scanner.keywordType(chars, starts[i], lengths[i]) != TokenType.IDENTIFIER)
+                keywords++;
+        return keywords;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public int map() {
+        int keywords = 0;
+        for (int i = 0; i < WORDS; i++)
+            if (Scanner.keywords.get(new String(chars, starts[i], lengths[i])) != null)
+                keywords++;
+        return keywords;
+    }
+}
@@ -0,0 +1,62 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// a number literal's value and text, the way Scanner.number() gets them.
+// 'direct' is what it does now: the value straight from the chars, and a
+// String only for a literal that doesn't print as itself. 'parseDouble' is
+// what it did before, the substring for the lexeme and parseDouble() on
+// that. NumberLiteralCheck makes sure the two agree
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberLiteralBenchmark {
+    private static final int LITERALS = 4096;
+
+    private char[] chars;
+    private int[] starts = new int[LITERALS];
+    private int[] lengths = new int[LITERALS];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LITERALS; i++) {
+            String literal = NumberLiteralCheck.literal(random, false);
+            starts[i] = text.length();
+            lengths[i] = literal.length();
+            text.append(literal).append(' ');
+        }
+        chars = text.toString().toCharArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LITERALS)
+    public void direct(Blackhole blackhole) {
+        for (int i = 0; i < LITERALS; i++) {
+            double value = Scanner.numberValue(chars, starts[i], lengths[i]);
+            String text = null;
+            if (!Scanner.printsAs(value, chars, starts[i], lengths[i]))
+                text = new String(chars, starts[i], lengths[i]);
+            blackhole.consume(value);
+            blackhole.consume(text);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LITERALS)
+    public void parseDouble(Blackhole blackhole) {
+        for (int i = 0; i < LITERALS; i++) {
+            String text = new String(chars, starts[i], lengths[i]);
+            blackhole.consume(Double.parseDouble(text));
+            blackhole.consume(text);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.Random;
+
+// checks Scanner.number() against what it replaced, on a lot of random
+// literals: the value has to be parseDouble()'s to the bit, and the
+// token's lexeme has to be the literal's text, whether it was kept or is
+// made from the value. run by 'make check'
+public class NumberLiteralCheck {
+    private static final int CHECKED = 1 << 20;
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 42);
+        for (int i = 0; i < CHECKED; i++) {
+            check(literal(random, true));
+            check(literal(random, false));
+        }
+        System.out.println(2 * CHECKED + " number literals ok");
+    }
+
+    private static void check(String literal) {
+        double value = Scanner.numberValue(literal.toCharArray(), 0, literal.length());
+        if (Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(Double.parseDouble(literal)))
+            throw new AssertionError(literal + " scans as " + value);
+
+        ErrorReporter reporter = new ErrorReporter();
+        List<Token> tokens = new Scanner(literal, reporter).scanTokens();
+        Token token = tokens.get(0);
+        if (reporter.hadError || tokens.size() != 2 || token.type != TokenType.NUMBER)
+            throw new AssertionError(literal + " isn't one number token");
+        if (!token.literal.equals(value) || !token.lexeme().equals(literal))
+            throw new AssertionError(literal + " scans as " + token);
+    }
+
+    // what a data file has, mostly: counts and amounts. the odd ones take
+    // in everything else a literal can be, past what the fast paths handle:
+    // long digit strings, leading and trailing zeros, tiny fractions
+    static String literal(Random random, boolean odd) {
+        switch (odd ? random.nextInt(6) : random.nextInt(2)) {
+            case 0:  return digits(random, 1 + random.nextInt(6));
+            case 1:  return digits(random, 1 + random.nextInt(5)) + "." + digits(random, 1 + random.nextInt(4));
+            case 2:  return digits(random, 1 + random.nextInt(24));
+            case 3:  return "0".repeat(random.nextInt(3)) + digits(random, 1 + random.nextInt(8)) + "." + digits(random, 1 + random.nextInt(8)) + "0".repeat(random.nextInt(3));
+            case 4:  return "0." + "0".repeat(random.nextInt(6)) + digits(random, 1 + random.nextInt(14));
+            default: return digits(random, 1 + random.nextInt(18)) + "." + digits(random, 1 + random.nextInt(30));
+        }
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder digits = new StringBuilder(count);
+        for (int i = 0; i < count; i++)
+            digits.append((char) ('0' + random.nextInt(10)));
+        return digits.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.craftinginterpreters.lox;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// one rule evaluated against changing inputs. 'prepared' compiles it once
+// and only sets the parameters each time; 'source' is what an embedder
+// had to do before, build the script text and run it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreparedBenchmark {
+    private static final String RULE = "(price * quantity - discount) / 100 > limit";
+
+    private LoxEngine.Context context;
+    private LoxEngine.Program program;
+    private final Object[] values = new Object[4];
+    private int i = 0;
+
+    @Setup
+    public void setup() {
+        LoxEngine engine = new LoxEngine();
+        StringWriter err = new StringWriter();
+        context = engine.newContext(new StringWriter(), err);
+        program = engine.prepareExpression(RULE, err, "price", "quantity", "discount", "limit");
+        if (program == null)
+            throw new IllegalStateException(err.toString());
+    }
+
+    @Benchmark
+    public Object prepared() {
+        values[0] = (double) (i++ & 1023);
+        values[1] = 3.0;
+        values[2] = 25.0;
+        values[3] = 10.0;
+        return context.evaluate(program, values);
+    }
+
+    @Benchmark
+    public int source() {
+        return context.run("var price = " + (i++ & 1023) + "; var quantity = 3;"
+                + " var discount = 25; var limit = 10; " + RULE + ";");
+    }
+}
@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// building a string one append at a time, s = s + "ab" over and over and
+// then printing it. ropes is the script on the tree-walker, where + makes
+// a Rope. copying does the same appends the way + used to, a new String
+// each time, for comparison. one shot each, since copying at 10^5 appends
+// takes seconds
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StringAppendBenchmark {
+    @Param({"1000", "100000"})
+    public int appends;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setup() {
+        StringBuilder source = new StringBuilder("var s = \"\";\n");
+        for (int i = 0; i < appends; i++)
+            source.append("s = s + \"ab\";\n");
+        source.append("print s;\n");
+
+        ErrorReporter reporter = new ErrorReporter();
+        statements = Lox.compile(new Scanner(source.toString(), reporter), reporter, new SymbolTable());
+        if (statements == null)
+            throw new IllegalStateException("append script doesn't compile");
+        statements = new NodeFuser().fuse(statements);
+        interpreter = new Interpreter(Writer.nullWriter(), reporter);
+    }
+
+    @Benchmark
+    public void ropes() {
+        interpreter.interpret(statements);
+    }
+
+    @Benchmark
+    public String copying() {
+        String s = "";
+        for (int i = 0; i < appends; i++)
+            s = s + "ab";
+        return s;
+    }
+}
@@ -7,7 +7,7 @@ class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
@@ -24,17 +24,33 @@ class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.right);
     }
 
     @Override
     public String visitVariableExpr(Expr.Variable expr) {
-        return expr.name.lexeme;
+        return expr.name.lexeme();
+    }
+
+    // fused nodes print as what they replaced
+    @Override
+    public String visitVariableConstantExpr(Expr.VariableConstant expr) {
+        return expr.original.accept(this);
+    }
+
+    @Override
+    public String visitVariableVariableExpr(Expr.VariableVariable expr) {
+        return expr.original.accept(this);
+    }
+
+    @Override
+    public String visitIncrementExpr(Expr.Increment expr) {
+        return expr.original.accept(this);
     }
 
     @Override
     public String visitAssignExpr(Expr.Assign expr) {
-        return expr.name.lexeme;
+        return expr.name.lexeme();
     }
 
     private String parenthesize(String name, Expr... exprs) {
@@ -0,0 +1,160 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// runs a whole directory (or a manifest listing scripts) in one JVM.
+// scripts are spread over a thread per core, each one in a fresh
+// LoxEngine context so they can't see each other's globals. output is
+// collected per script and printed in order once they've all finished.
+// a script that blows up the interpreter itself only fails that script.
+// the threads aren't a ForkJoinPool's: a ForkJoinWorkerThread can't be
+// given a stack size, and scripts need more than the default. nothing
+// here forks, so there's nothing to steal either. each script is one
+// task, and an idle thread takes the next one off the shared queue
+class BatchRunner {
+    // a script that ended in anything but a Lox error, a StackOverflowError
+    // from recursing too deep, say. EX_OSERR
+    static final int CRASHED = 71;
+    // couldn't be read at all. EX_NOINPUT
+    static final int UNREADABLE = 66;
+
+    // a runaway recursion in a script takes this much stack before it's
+    // a crash. the memory is only reserved, and used as deep as it goes
+    private static final long STACK = 64L << 20;
+
+    private final LoxEngine engine = new LoxEngine();
+
+    // what happened to one script
+    static class Result {
+        final Path script;
+        final int status;
+        final String output;
+        final String errors;
+
+        Result(Path script, int status, String output, String errors) {
+            this.script = script;
+            this.status = status;
+            this.output = output;
+            this.errors = errors;
+        }
+    }
+
+    // every .lox file under a directory, or the files named in a manifest:
+    // one path per line, relative to the manifest, '#' starts a comment
+    static List<Path> scripts(Path target) throws IOException {
+        if (Files.isDirectory(target)) {
+            try (Stream<Path> files = Files.walk(target)) {
+                return files.filter(path -> path.toString().endsWith(".lox"))
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        }
+
+        List<Path> scripts = new ArrayList<>();
+        Path base = target.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(target, Charset.defaultCharset())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            scripts.add(base.resolve(line).normalize());
+        }
+        return scripts;
+    }
+
+    List<Result> run(List<Path> scripts) {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                task -> {
+                    Thread thread = new Thread(null, task, "batch-" + count.incrementAndGet(), STACK);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            List<Future<Result>> pending = new ArrayList<>();
+            for (Path script : scripts)
+                pending.add(pool.submit(() -> run(script)));
+
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> result : pending)
+                results.add(result.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("batch interrupted", e);
+        } catch (ExecutionException e) {
+            // run(Path) catches everything, so this can't happen
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result run(Path script) {
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        int status;
+
+        LoxEngine.Context context = engine.acquire(output, errors);
+        try (Reader reader = Files.newBufferedReader(script, Charset.defaultCharset())) {
+            status = context.run(reader);
+        } catch (IOException | UncheckedIOException e) {
+            errors.write("Could not read " + script + ": " + e.getMessage() + "\n");
+            status = UNREADABLE;
+        } catch (Throwable e) {
+            context.discard(); // not fit for the next script
+            errors.write("Crashed running " + script + ": " + e + "\n");
+            status = CRASHED;
+        } finally {
+            context.close();
+        }
+        return new Result(script, status, output.toString(), errors.toString());
+    }
+
+    // each script's output under a header, then a count of each outcome.
+    // returns the exit code for the whole batch: the highest one seen
+    static int summarize(List<Result> results, PrintStream out) {
+        int ok = 0, compileErrors = 0, runtimeErrors = 0, crashed = 0, unreadable = 0;
+        int worst = LoxEngine.OK;
+
+        for (Result result : results) {
+            out.println("== " + result.script + " (" + result.status + ")");
+            out.print(result.output);
+            out.print(result.errors);
+
+            switch (result.status) {
+                case LoxEngine.OK:            ok++;            break;
+                case LoxEngine.COMPILE_ERROR: compileErrors++; break;
+                case LoxEngine.RUNTIME_ERROR: runtimeErrors++; break;
+                case CRASHED:                 crashed++;       break;
+                default:                      unreadable++;    break;
+            }
+            worst = Math.max(worst, result.status);
+        }
+
+        out.println(results.size() + " scripts: " + ok + " ok, "
+                + compileErrors + " compile errors, "
+                + runtimeErrors + " runtime errors, "
+                + crashed + " crashed, "
+                + unreadable + " unreadable");
+        return worst;
+    }
+}
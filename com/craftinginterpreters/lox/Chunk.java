@@ -0,0 +1,75 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// a compiled program for the VM: a flat array of opcodes and operands,
+// the line each byte came from, and a pool of constants
+class Chunk {
+    // opcodes. operands follow inline as unsigned 16 bit big endian
+    static final byte OP_CONSTANT      = 0;  // [index]
+    static final byte OP_NIL           = 1;
+    static final byte OP_TRUE          = 2;
+    static final byte OP_FALSE         = 3;
+    static final byte OP_POP           = 4;
+    static final byte OP_POPN          = 5;  // [count]
+    static final byte OP_GET_LOCAL     = 6;  // [stack slot]
+    static final byte OP_SET_LOCAL     = 7;  // [stack slot]
+    static final byte OP_DEFINE_GLOBAL = 8;  // [name index]
+    static final byte OP_GET_GLOBAL    = 9;  // [name index]
+    static final byte OP_SET_GLOBAL    = 10; // [name index]
+    static final byte OP_EQUAL         = 11;
+    static final byte OP_NOT_EQUAL     = 12;
+    static final byte OP_GREATER       = 13;
+    static final byte OP_GREATER_EQUAL = 14;
+    static final byte OP_LESS          = 15;
+    static final byte OP_LESS_EQUAL    = 16;
+    static final byte OP_ADD           = 17;
+    static final byte OP_SUBTRACT      = 18;
+    static final byte OP_MULTIPLY      = 19;
+    static final byte OP_DIVIDE        = 20;
+    static final byte OP_NOT           = 21;
+    static final byte OP_NEGATE        = 22;
+    static final byte OP_PRINT         = 23;
+    static final byte OP_RETURN        = 24;
+
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+
+    final List<Object> constants = new ArrayList<>();
+    // so the same number or name only goes in the pool once
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code  = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count]  = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    void writeShort(int value, int line) {
+        write((value >> 8) & 0xff, line);
+        write(value & 0xff, line);
+    }
+
+    int readShort(int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null)
+            return index;
+
+        constants.add(value);
+        constantIndex.put(value, constants.size() - 1);
+        return constants.size() - 1;
+    }
+}
@@ -0,0 +1,205 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.Chunk.*;
+
+// turns a resolved syntax tree into a Chunk for the VM.
+// locals live on the VM's stack: each block's locals sit together starting
+// at that block's base, so the Resolver's (depth, slot) becomes
+// base-of-block-at-depth + slot
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_OPERAND = 0xffff;
+
+    private final ErrorReporter reporter;
+    private final Chunk chunk = new Chunk();
+    // stack slot where each enclosing block's locals start. innermost last
+    private final List<Integer> blockBases = new ArrayList<>();
+    private int localCount = 0;
+    private int line = 1;
+
+    Compiler(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    Chunk compile(List<Stmt> statements) {
+        for (Stmt statement : statements)
+            compile(statement);
+        emit(OP_RETURN);
+        return chunk;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        blockBases.add(localCount);
+        for (Stmt statement : stmt.statements)
+            compile(statement);
+        blockBases.remove(blockBases.size() - 1);
+
+        if (stmt.locals > 0) {
+            emit(OP_POPN, stmt.locals);
+            localCount -= stmt.locals;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OP_POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OP_PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null)
+            compile(stmt.initializer);
+        else
+            emit(OP_NIL);
+
+        line = stmt.name.line;
+        if (stmt.slot < 0) {
+            emit(OP_DEFINE_GLOBAL, constant(stmt.name.lexeme()));
+        } else if (stmt.slot < localCount - blockBases.get(blockBases.size() - 1)) {
+            // declared again in the same block: same slot, new value
+            emit(OP_SET_LOCAL, stackSlot(0, stmt.slot));
+            emit(OP_POP);
+        } else {
+            // the value just stays where it is on the stack
+            localCount++;
+            if (localCount > MAX_OPERAND)
+                reporter.error(stmt.name, "Too many local variables.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+
+        line = expr.name.line;
+        if (expr.depth < 0)
+            emit(OP_SET_GLOBAL, constant(expr.name.lexeme()));
+        else
+            emit(OP_SET_LOCAL, stackSlot(expr.depth, expr.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        if (expr.depth < 0)
+            emit(OP_GET_GLOBAL, constant(expr.name.lexeme()));
+        else
+            emit(OP_GET_LOCAL, stackSlot(expr.depth, expr.slot));
+        return null;
+    }
+
+    // the VM gets unfused trees, but if a fused one turns up it compiles
+    // the same as what it replaced
+    @Override
+    public Void visitVariableConstantExpr(Expr.VariableConstant expr) {
+        compile(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableVariableExpr(Expr.VariableVariable expr) {
+        compile(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitIncrementExpr(Expr.Increment expr) {
+        compile(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case GREATER:       emit(OP_GREATER);       break;
+            case GREATER_EQUAL: emit(OP_GREATER_EQUAL); break;
+            case LESS:          emit(OP_LESS);          break;
+            case LESS_EQUAL:    emit(OP_LESS_EQUAL);    break;
+            case BANG_EQUAL:    emit(OP_NOT_EQUAL);     break;
+            case EQUAL_EQUAL:   emit(OP_EQUAL);         break;
+            case STAR:          emit(OP_MULTIPLY);      break;
+            case SLASH:         emit(OP_DIVIDE);        break;
+            case MINUS:         emit(OP_SUBTRACT);      break;
+            case PLUS:          emit(OP_ADD);           break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            emit(OP_NIL);
+        else if (expr.value.equals(true))
+            emit(OP_TRUE);
+        else if (expr.value.equals(false))
+            emit(OP_FALSE);
+        else
+            emit(OP_CONSTANT, constant(expr.value));
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG:  emit(OP_NOT);    break;
+            case MINUS: emit(OP_NEGATE); break;
+        }
+        return null;
+    }
+
+    private int stackSlot(int depth, int slot) {
+        return blockBases.get(blockBases.size() - 1 - depth) + slot;
+    }
+
+    private int constant(Object value) {
+        int index = chunk.addConstant(value);
+        if (index > MAX_OPERAND)
+            reporter.error(line, "Too many constants in one chunk.");
+        return index;
+    }
+
+    private void emit(byte op) {
+        chunk.write(op, line);
+    }
+
+    private void emit(byte op, int operand) {
+        chunk.write(op, line);
+        chunk.writeShort(operand, line);
+    }
+}
@@ -0,0 +1,198 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// rewrites the tree before it gets resolved: operators whose operands are
+// all literals are worked out here once, groupings are dropped since the
+// tree already encodes precedence, and a few identities like x * 1 go away.
+// anything that would raise a RuntimeError is left alone so the error still
+// happens at runtime, on the same line, with the same message
+class ConstantFolder implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> fold(List<Stmt> statements) {
+        List<Stmt> folded = new ArrayList<>(statements.size());
+        for (Stmt statement : statements)
+            folded.add(fold(statement));
+        return folded;
+    }
+
+    private Stmt fold(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr fold(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(fold(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(fold(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(fold(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = null;
+        if (stmt.initializer != null)
+            initializer = fold(stmt.initializer);
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, fold(expr.value));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    // fusing comes after folding. a fused tree folds back to what it was
+    @Override
+    public Expr visitVariableConstantExpr(Expr.VariableConstant expr) {
+        return fold(expr.original);
+    }
+
+    @Override
+    public Expr visitVariableVariableExpr(Expr.VariableVariable expr) {
+        return fold(expr.original);
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+        return fold(expr.original);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override // the parentheses did their job in the parser
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return fold(expr.expression);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = fold(expr.right);
+
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double)
+                        return new Expr.Literal(-((double) value));
+                    break;
+            }
+        }
+
+        // -(-x) is x, but only if x is sure to be a number
+        if (expr.operator.type == TokenType.MINUS
+                && right instanceof Expr.Unary
+                && ((Expr.Unary) right).operator.type == TokenType.MINUS
+                && isNumber(((Expr.Unary) right).right))
+            return ((Expr.Unary) right).right;
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left  = fold(expr.left);
+        Expr right = fold(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object folded = foldBinary(expr.operator,
+                    ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (folded != null)
+                return new Expr.Literal(folded);
+        }
+
+        // identities that hold for every double, including -0 and NaN.
+        // the other side still has to be a number or we'd lose its error
+        switch (expr.operator.type) {
+            case STAR:
+                if (isLiteral(right, 1.0) && isNumber(left))  return left;
+                if (isLiteral(left, 1.0)  && isNumber(right)) return right;
+                break;
+            case SLASH:
+                if (isLiteral(right, 1.0) && isNumber(left))  return left;
+                break;
+            case MINUS:
+                if (isLiteral(right, 0.0) && isNumber(left))  return left;
+                break;
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // same rules as Interpreter.visitBinaryExpr. null means it would throw
+    // there (or isn't worth folding) so leave it for runtime
+    private Object foldBinary(Token operator, Object left, Object right) {
+        if (operator.type == TokenType.PLUS) {
+            if (left instanceof String && right instanceof String)
+                return (String) left + (String) right;
+        }
+
+        if (!(left instanceof Double && right instanceof Double))
+            return null;
+
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator.type) {
+            case GREATER:       return a >  b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS:          return a <  b;
+            case LESS_EQUAL:    return a <= b;
+            case BANG_EQUAL:    return !Interpreter.isEqual(left, right);
+            case EQUAL_EQUAL:   return Interpreter.isEqual(left, right);
+            case STAR:          return a * b;
+            case SLASH:         return a / b;
+            case MINUS:         return a - b;
+            case PLUS:          return a + b;
+        }
+        return null;
+    }
+
+    // an expression that either evaluates to a number or throws by itself
+    private static boolean isNumber(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return ((Expr.Literal) expr).value instanceof Double;
+
+        if (expr instanceof Expr.Unary)
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+                case PLUS:
+                    return isNumber(binary.left) && isNumber(binary.right);
+            }
+        }
+        return false;
+    }
+
+    // exact match, so 0 and -0 are told apart
+    private static boolean isLiteral(Expr expr, double value) {
+        return expr instanceof Expr.Literal
+            && Double.valueOf(value).equals(((Expr.Literal) expr).value);
+    }
+}
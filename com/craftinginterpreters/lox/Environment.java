@@ -1,48 +1,125 @@
 package com.craftinginterpreters.lox;
 import com.craftinginterpreters.lox.*;
 
-import java.util.HashMap;
-import java.util.Map;
-
+// globals live in a small hash table keyed by their SymbolTable number,
+// and are still late bound: a number with no cell yet is an undefined
+// variable.
+// block scopes hold their locals in an array, indexed by the slot
+// the Resolver handed out
 class Environment {
+    // the cell a global's value lives in. once defined, a global keeps
+    // its cell for good, so a Variable or Assign node can hold on to it
+    // and skip the array next time. owner tells whether the cell belongs
+    // to the globals it's being used with
+    static final class Binding {
+        final Environment owner;
+        final int global;
+        Object value;
+
+        Binding(Environment owner, int global) {
+            this.owner = owner;
+            this.global = global;
+        }
+    }
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // open addressing, probed from the number's own slot. sized by how many
+    // globals are defined here, not by the numbers, which are shared with
+    // everything else using the same SymbolTable and can be any size
+    private Binding[] globals;
+    private int globalCount = 0;
+    private final Object[] slots;
 
     Environment() {
         enclosing = null;
+        globals = new Binding[16];
+        slots = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        globals = null;
+        slots = new Object[size];
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    // redefining a global reuses its cell, so cached ones stay good
+    void defineGlobal(int global, Object value) {
+        Binding binding = binding(global);
+        if (binding == null) {
+            if (2 * (globalCount + 1) > globals.length)
+                rehash(globals.length * 2);
+            binding = new Binding(this, global);
+            globals[free(globals, global)] = binding;
+            globalCount++;
+        }
+        binding.value = value;
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
+    void define(int slot, Object value) {
+        slots[slot] = value;
+    }
 
-        if (enclosing != null)
-            return enclosing.get(name);
+    // name is only for the error
+    Object getGlobal(int global, Token name) {
+        Binding binding = binding(global);
+        if (binding != null)
+            return binding.value;
 
-        throw new RuntimeError(name, 
-                "Undefined variable '" + name.lexeme + "'.");
+        throw new RuntimeError(name,
+                "Undefined variable '" + name.lexeme() + "'.");
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name)) {
-            values.put(name.lexeme, value);
+    void assignGlobal(int global, Token name, Object value) {
+        Binding binding = binding(global);
+        if (binding != null) {
+            binding.value = value;
             return;
         }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'");
+    }
+
+    // a defined global's cell, null if it isn't defined
+    Binding binding(int global) {
+        Binding[] table = globals;
+        int mask = table.length - 1;
+        for (int i = global & mask; ; i = (i + 1) & mask) {
+            Binding binding = table[i];
+            if (binding == null || binding.global == global)
+                return binding;
         }
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'");
+    // at most half full, so a probe always ends at an empty slot
+    private void rehash(int size) {
+        Binding[] table = new Binding[size];
+        for (Binding binding : globals)
+            if (binding != null)
+                table[free(table, binding.global)] = binding;
+        globals = table;
+    }
+
+    private static int free(Binding[] table, int global) {
+        int mask = table.length - 1;
+        int i = global & mask;
+        while (table[i] != null)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
     }
-}
 
+    // walk up 'depth' scopes. no names involved
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++)
+            environment = environment.enclosing;
+        return environment;
+    }
+}
@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// where compile and runtime errors get reported, and whether any have
+// been. every stage of one run shares one of these, so separate runs
+// (threads, embedded contexts) don't see each other's errors
+class ErrorReporter {
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    private final PrintWriter err;
+
+    ErrorReporter() {
+        this(new OutputStreamWriter(System.err));
+    }
+
+    ErrorReporter(Writer err) {
+        this.err = new PrintWriter(err, true);
+    }
+
+    // show an error to the user when a bad token is encountered
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF)
+            report(token.line, " at end", message);
+        else
+            report(token.line, " at '" + token.lexeme() + "'", message);
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n"
+                    + "[line " + error.token.line + "]");
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where, String message) {
+        err.println("[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+
+    void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+}
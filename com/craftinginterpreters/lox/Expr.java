@@ -14,18 +14,44 @@ abstract class Expr {
         R visitLiteralExpr(Literal expr);
         R visitUnaryExpr(Unary expr);
         R visitVariableExpr(Variable expr);
+        R visitVariableConstantExpr(VariableConstant expr);
+        R visitVariableVariableExpr(VariableVariable expr);
+        R visitIncrementExpr(Increment expr);
     }
 
+    interface IntVisitor {
+        int visitAssignExpr(Assign expr);
+        int visitBinaryExpr(Binary expr);
+        int visitGroupingExpr(Grouping expr);
+        int visitLiteralExpr(Literal expr);
+        int visitUnaryExpr(Unary expr);
+        int visitVariableExpr(Variable expr);
+        int visitVariableConstantExpr(VariableConstant expr);
+        int visitVariableVariableExpr(VariableVariable expr);
+        int visitIncrementExpr(Increment expr);
+    }
+
+    boolean numeric;
+
     abstract <R> R accept(Visitor<R> vistor);
+    abstract int accept(IntVisitor visitor);
 
     static class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
+        int global = -1;
+        Environment.Binding binding;
 
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitAssignExpr(this);
+        }
+
         Assign(Token name, Expr value) {
             this.name = name;
             this.value = value;
@@ -41,6 +67,10 @@ abstract class Expr {
             return visitor.visitBinaryExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitBinaryExpr(this);
+        }
+
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
@@ -55,6 +85,10 @@ abstract class Expr {
             return visitor.visitGroupingExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitGroupingExpr(this);
+        }
+
         Grouping(Expr expression) {
             this.expression = expression;
         }
@@ -67,6 +101,10 @@ abstract class Expr {
             return visitor.visitLiteralExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitLiteralExpr(this);
+        }
+
         Literal(Object value) {
             this.value = value;
         }
@@ -80,6 +118,10 @@ abstract class Expr {
             return visitor.visitUnaryExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitUnaryExpr(this);
+        }
+
         Unary(Token operator, Expr right) {
             this.operator = operator;
             this.right = right;
@@ -88,13 +130,87 @@ abstract class Expr {
 
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot;
+        int global = -1;
+        Environment.Binding binding;
 
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitVariableExpr(this);
+        }
+
         Variable(Token name) {
             this.name = name;
         }
     }
+
+    static class VariableConstant extends Expr {
+        final Expr.Variable variable;
+        final Token operator;
+        final double constant;
+        final Expr original;
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitVariableConstantExpr(this);
+        }
+
+        int accept(IntVisitor visitor) {
+            return visitor.visitVariableConstantExpr(this);
+        }
+
+        VariableConstant(Expr.Variable variable, Token operator, double constant, Expr original) {
+            this.variable = variable;
+            this.operator = operator;
+            this.constant = constant;
+            this.original = original;
+        }
+    }
+
+    static class VariableVariable extends Expr {
+        final Expr.Variable left;
+        final Token operator;
+        final Expr.Variable right;
+        final Expr original;
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitVariableVariableExpr(this);
+        }
+
+        int accept(IntVisitor visitor) {
+            return visitor.visitVariableVariableExpr(this);
+        }
+
+        VariableVariable(Expr.Variable left, Token operator, Expr.Variable right, Expr original) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+            this.original = original;
+        }
+    }
+
+    static class Increment extends Expr {
+        final Expr.Variable variable;
+        final Token operator;
+        final double constant;
+        final Expr original;
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIncrementExpr(this);
+        }
+
+        int accept(IntVisitor visitor) {
+            return visitor.visitIncrementExpr(this);
+        }
+
+        Increment(Expr.Variable variable, Token operator, double constant, Expr original) {
+            this.variable = variable;
+            this.operator = operator;
+            this.constant = constant;
+            this.original = original;
+        }
+    }
 }
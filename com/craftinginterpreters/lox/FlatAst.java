@@ -0,0 +1,454 @@
+/* autogenerated by com.craftinginterpreters.tool.GenerateAst
+ * The Expr and Stmt trees laid out as a structure of arrays, so a
+ * program is a handful of int arrays instead of an object per node
+ */
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class FlatAst {
+    // node kinds
+    static final int ASSIGN = 0;
+    static final int BINARY = 1;
+    static final int GROUPING = 2;
+    static final int LITERAL = 3;
+    static final int UNARY = 4;
+    static final int VARIABLE = 5;
+    static final int VARIABLECONSTANT = 6;
+    static final int VARIABLEVARIABLE = 7;
+    static final int INCREMENT = 8;
+    static final int BLOCK = 9;
+    static final int EXPRESSION = 10;
+    static final int PRINT = 11;
+    static final int VAR = 12;
+
+    private int[] kinds = new int[64];
+    private int[] first = new int[64]; // where a node's fields start
+    private int nodeCount = 0;
+    private int[] fields = new int[256];
+    private int fieldCount = 0;
+    private int[] lists = new int[64]; // a length, then that many nodes
+    private int listCount = 0;
+
+    private int[] tokenTypes = new int[64];
+    private int[] tokenLexemes = new int[64];
+    private int[] tokenLines = new int[64];
+    private int tokenCount = 0;
+    private String[] strings;
+    private static final TokenType[] types = TokenType.values();
+    private Object[] constants;
+
+    // list of the top-level statements
+    int statements;
+
+    private FlatAst() {}
+
+    static FlatAst of(List<Stmt> statements) {
+        FlatAst ast = new FlatAst();
+        Builder builder = new Builder(ast);
+        ast.statements = builder.list(statements);
+        builder.finish();
+        return ast;
+    }
+
+    int kind(int node) {
+        return kinds[node];
+    }
+
+    int size(int list) {
+        return lists[list];
+    }
+
+    int get(int list, int index) {
+        return lists[list + 1 + index];
+    }
+
+    TokenType type(int token) {
+        return types[tokenTypes[token]];
+    }
+
+    String lexeme(int token) {
+        return strings[tokenLexemes[token]];
+    }
+
+    // a real Token, only made when one is needed for an error
+    Token token(int token) {
+        return new Token(type(token),
+                lexeme(token), null, tokenLines[token]);
+    }
+
+    boolean numeric(int node) {
+        return fields[first[node]] != 0;
+    }
+
+    int assignName(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int assignValue(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int assignDepth(int node) {
+        return fields[first[node] + 3];
+    }
+
+    int assignSlot(int node) {
+        return fields[first[node] + 4];
+    }
+
+    int assignGlobal(int node) {
+        return fields[first[node] + 5];
+    }
+
+    int binaryLeft(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int binaryOperator(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int binaryRight(int node) {
+        return fields[first[node] + 3];
+    }
+
+    int groupingExpression(int node) {
+        return fields[first[node] + 1];
+    }
+
+    Object literalValue(int node) {
+        return constants[fields[first[node] + 1]];
+    }
+
+    int unaryOperator(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int unaryRight(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int variableName(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int variableDepth(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int variableSlot(int node) {
+        return fields[first[node] + 3];
+    }
+
+    int variableGlobal(int node) {
+        return fields[first[node] + 4];
+    }
+
+    int variableConstantOperator(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int variableConstantOriginal(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int variableVariableOperator(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int variableVariableOriginal(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int incrementOperator(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int incrementOriginal(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int blockStatements(int node) {
+        return fields[first[node]];
+    }
+
+    int blockLocals(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int expressionExpression(int node) {
+        return fields[first[node]];
+    }
+
+    int printExpression(int node) {
+        return fields[first[node]];
+    }
+
+    int varName(int node) {
+        return fields[first[node]];
+    }
+
+    int varInitializer(int node) {
+        return fields[first[node] + 1];
+    }
+
+    int varSlot(int node) {
+        return fields[first[node] + 2];
+    }
+
+    int varGlobal(int node) {
+        return fields[first[node] + 3];
+    }
+
+    interface ExprVisitor<R> {
+        R visitAssign(int node);
+        R visitBinary(int node);
+        R visitGrouping(int node);
+        R visitLiteral(int node);
+        R visitUnary(int node);
+        R visitVariable(int node);
+        R visitVariableConstant(int node);
+        R visitVariableVariable(int node);
+        R visitIncrement(int node);
+    }
+
+    <R> R accept(int node, ExprVisitor<R> visitor) {
+        switch (kinds[node]) {
+            case ASSIGN: return visitor.visitAssign(node);
+            case BINARY: return visitor.visitBinary(node);
+            case GROUPING: return visitor.visitGrouping(node);
+            case LITERAL: return visitor.visitLiteral(node);
+            case UNARY: return visitor.visitUnary(node);
+            case VARIABLE: return visitor.visitVariable(node);
+            case VARIABLECONSTANT: return visitor.visitVariableConstant(node);
+            case VARIABLEVARIABLE: return visitor.visitVariableVariable(node);
+            case INCREMENT: return visitor.visitIncrement(node);
+        }
+        throw new IllegalArgumentException("unexpected kind " + kinds[node]
+                + " for ExprVisitor");
+    }
+
+    interface StmtVisitor<R> {
+        R visitBlock(int node);
+        R visitExpression(int node);
+        R visitPrint(int node);
+        R visitVar(int node);
+    }
+
+    <R> R accept(int node, StmtVisitor<R> visitor) {
+        switch (kinds[node]) {
+            case BLOCK: return visitor.visitBlock(node);
+            case EXPRESSION: return visitor.visitExpression(node);
+            case PRINT: return visitor.visitPrint(node);
+            case VAR: return visitor.visitVar(node);
+        }
+        throw new IllegalArgumentException("unexpected kind " + kinds[node]
+                + " for StmtVisitor");
+    }
+
+    private int add(int kind, int count) {
+        if (nodeCount == kinds.length) {
+            kinds = Arrays.copyOf(kinds, nodeCount * 2);
+            first = Arrays.copyOf(first, nodeCount * 2);
+        }
+        while (fieldCount + count > fields.length)
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        kinds[nodeCount] = kind;
+        first[nodeCount] = fieldCount;
+        fieldCount += count;
+        return nodeCount++;
+    }
+
+    private void set(int node, int field, int value) {
+        fields[first[node] + field] = value;
+    }
+
+    private static class Builder implements Expr.IntVisitor, Stmt.IntVisitor {
+        private final FlatAst ast;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<Object> constants = new ArrayList<>();
+
+        Builder(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        @Override
+        public int visitAssignExpr(Expr.Assign expr) {
+            int node = ast.add(ASSIGN, 6);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.name));
+            ast.set(node, 2, node(expr.value));
+            ast.set(node, 3, expr.depth);
+            ast.set(node, 4, expr.slot);
+            ast.set(node, 5, expr.global);
+            return node;
+        }
+
+        @Override
+        public int visitBinaryExpr(Expr.Binary expr) {
+            int node = ast.add(BINARY, 4);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, node(expr.left));
+            ast.set(node, 2, token(expr.operator));
+            ast.set(node, 3, node(expr.right));
+            return node;
+        }
+
+        @Override
+        public int visitGroupingExpr(Expr.Grouping expr) {
+            int node = ast.add(GROUPING, 2);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, node(expr.expression));
+            return node;
+        }
+
+        @Override
+        public int visitLiteralExpr(Expr.Literal expr) {
+            int node = ast.add(LITERAL, 2);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, constant(expr.value));
+            return node;
+        }
+
+        @Override
+        public int visitUnaryExpr(Expr.Unary expr) {
+            int node = ast.add(UNARY, 3);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.operator));
+            ast.set(node, 2, node(expr.right));
+            return node;
+        }
+
+        @Override
+        public int visitVariableExpr(Expr.Variable expr) {
+            int node = ast.add(VARIABLE, 5);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.name));
+            ast.set(node, 2, expr.depth);
+            ast.set(node, 3, expr.slot);
+            ast.set(node, 4, expr.global);
+            return node;
+        }
+
+        @Override
+        public int visitVariableConstantExpr(Expr.VariableConstant expr) {
+            int node = ast.add(VARIABLECONSTANT, 3);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.operator));
+            ast.set(node, 2, node(expr.original));
+            return node;
+        }
+
+        @Override
+        public int visitVariableVariableExpr(Expr.VariableVariable expr) {
+            int node = ast.add(VARIABLEVARIABLE, 3);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.operator));
+            ast.set(node, 2, node(expr.original));
+            return node;
+        }
+
+        @Override
+        public int visitIncrementExpr(Expr.Increment expr) {
+            int node = ast.add(INCREMENT, 3);
+            ast.set(node, 0, expr.numeric ? 1 : 0);
+            ast.set(node, 1, token(expr.operator));
+            ast.set(node, 2, node(expr.original));
+            return node;
+        }
+
+        @Override
+        public int visitBlockStmt(Stmt.Block stmt) {
+            int node = ast.add(BLOCK, 2);
+            ast.set(node, 0, list(stmt.statements));
+            ast.set(node, 1, stmt.locals);
+            return node;
+        }
+
+        @Override
+        public int visitExpressionStmt(Stmt.Expression stmt) {
+            int node = ast.add(EXPRESSION, 1);
+            ast.set(node, 0, node(stmt.expression));
+            return node;
+        }
+
+        @Override
+        public int visitPrintStmt(Stmt.Print stmt) {
+            int node = ast.add(PRINT, 1);
+            ast.set(node, 0, node(stmt.expression));
+            return node;
+        }
+
+        @Override
+        public int visitVarStmt(Stmt.Var stmt) {
+            int node = ast.add(VAR, 4);
+            ast.set(node, 0, token(stmt.name));
+            ast.set(node, 1, node(stmt.initializer));
+            ast.set(node, 2, stmt.slot);
+            ast.set(node, 3, stmt.global);
+            return node;
+        }
+
+        private int node(Expr expr) {
+            return expr == null ? -1 : expr.accept(this);
+        }
+
+        private int node(Stmt stmt) {
+            return stmt == null ? -1 : stmt.accept(this);
+        }
+
+        // children first, then the list itself in one piece
+        int list(List<?> items) {
+            int[] nodes = new int[items.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                Object item = items.get(i);
+                nodes[i] = item instanceof Expr ? node((Expr) item) : node((Stmt) item);
+            }
+            while (ast.listCount + nodes.length + 1 > ast.lists.length)
+                ast.lists = Arrays.copyOf(ast.lists, ast.lists.length * 2);
+            int list = ast.listCount;
+            ast.lists[list] = nodes.length;
+            System.arraycopy(nodes, 0, ast.lists, list + 1, nodes.length);
+            ast.listCount += nodes.length + 1;
+            return list;
+        }
+
+        private int token(Token token) {
+            if (ast.tokenCount == ast.tokenTypes.length) {
+                int size = ast.tokenCount * 2;
+                ast.tokenTypes   = Arrays.copyOf(ast.tokenTypes, size);
+                ast.tokenLexemes = Arrays.copyOf(ast.tokenLexemes, size);
+                ast.tokenLines   = Arrays.copyOf(ast.tokenLines, size);
+            }
+            ast.tokenTypes[ast.tokenCount]   = token.type.ordinal();
+            ast.tokenLexemes[ast.tokenCount] = strings.computeIfAbsent(token.lexeme(), lexeme -> strings.size());
+            ast.tokenLines[ast.tokenCount]   = token.line;
+            return ast.tokenCount++;
+        }
+
+        private int constant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        // trim everything to size
+        void finish() {
+            ast.kinds        = Arrays.copyOf(ast.kinds, ast.nodeCount);
+            ast.first        = Arrays.copyOf(ast.first, ast.nodeCount);
+            ast.fields       = Arrays.copyOf(ast.fields, ast.fieldCount);
+            ast.lists        = Arrays.copyOf(ast.lists, ast.listCount);
+            ast.tokenTypes   = Arrays.copyOf(ast.tokenTypes, ast.tokenCount);
+            ast.tokenLexemes = Arrays.copyOf(ast.tokenLexemes, ast.tokenCount);
+            ast.tokenLines   = Arrays.copyOf(ast.tokenLines, ast.tokenCount);
+            ast.strings = new String[strings.size()];
+            for (Map.Entry<String, Integer> string : strings.entrySet())
+                ast.strings[string.getValue()] = string.getKey();
+            ast.constants = constants.toArray();
+        }
+    }
+}
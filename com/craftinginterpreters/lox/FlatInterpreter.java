@@ -0,0 +1,306 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// runs a FlatAst. follows Interpreter visit for visit, same results and
+// same errors, but walks int indices into a few arrays instead of
+// chasing an object per node. tokens only become Tokens for an error
+class FlatInterpreter implements FlatAst.ExprVisitor<Object>, FlatAst.StmtVisitor<Void> {
+    private FlatAst ast;
+    private Environment globals = new Environment();
+    private Environment environment = globals;
+
+    private final PrintWriter out;
+    private final NumberFormatter numbers = new NumberFormatter();
+    private final ErrorReporter reporter;
+
+    FlatInterpreter(ErrorReporter reporter) {
+        this(new OutputStreamWriter(System.out), reporter);
+    }
+
+    FlatInterpreter(Writer output, ErrorReporter reporter) {
+        this.out = new PrintWriter(new BufferedWriter(output, Interpreter.OUTPUT_BUFFER), false);
+        this.reporter = reporter;
+    }
+
+    void interpret(FlatAst ast) {
+        this.ast = ast;
+        try {
+            for (int i = 0; i < ast.size(ast.statements); i++)
+                execute(ast.get(ast.statements, i));
+        } catch (RuntimeError error) {
+            out.flush(); // everything printed so far comes before the error
+            reporter.runtimeError(error);
+        } finally {
+            out.flush();
+        }
+    }
+
+    @Override
+    public Object visitLiteral(int node) {
+        return ast.literalValue(node);
+    }
+
+    @Override
+    public Object visitUnary(int node) {
+        if (ast.numeric(node))
+            return evaluateNumber(node);
+
+        Object right = evaluate(ast.unaryRight(node));
+
+        switch (ast.type(ast.unaryOperator(node))) {
+            case BANG:
+                return !Interpreter.isTruthy(right);
+            case MINUS:
+                checkNumberOperand(ast.unaryOperator(node), right);
+                return -((double) right);
+        }
+
+        // unreachable
+        return null;
+    }
+
+    @Override
+    public Object visitVariable(int node) {
+        if (ast.variableDepth(node) >= 0)
+            return environment.getAt(ast.variableDepth(node), ast.variableSlot(node));
+
+        int global = ast.variableGlobal(node);
+        Environment.Binding binding = globals.binding(global);
+        if (binding != null)
+            return binding.value;
+        // not defined. let Environment say so
+        return globals.getGlobal(global, ast.token(ast.variableName(node)));
+    }
+
+    // NodeFuser's nodes are for the tree-walker. a flattened one runs as
+    // whatever it replaced
+    @Override
+    public Object visitVariableConstant(int node) {
+        return evaluate(ast.variableConstantOriginal(node));
+    }
+
+    @Override
+    public Object visitVariableVariable(int node) {
+        return evaluate(ast.variableVariableOriginal(node));
+    }
+
+    @Override
+    public Object visitIncrement(int node) {
+        return evaluate(ast.incrementOriginal(node));
+    }
+
+    private void checkNumberOperand(int operator, Object operand) {
+        if (operand instanceof Double)
+            return;
+        throw new RuntimeError(ast.token(operator), "Operand must be a number.");
+    }
+
+    private void checkNumberOperands(int operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new RuntimeError(ast.token(operator), "Operands must be a number.");
+    }
+
+    @Override
+    public Object visitBinary(int node) {
+        if (ast.numeric(node))
+            return evaluateNumber(node);
+
+        int leftNode  = ast.binaryLeft(node);
+        int rightNode = ast.binaryRight(node);
+        int operator  = ast.binaryOperator(node);
+        TokenType type = ast.type(operator);
+
+        // comparing two numeric subtrees doesn't need to box them either
+        if (ast.numeric(leftNode) && ast.numeric(rightNode)) {
+            switch (type) {
+                case GREATER:
+                    return evaluateNumber(leftNode) >  evaluateNumber(rightNode);
+                case GREATER_EQUAL:
+                    return evaluateNumber(leftNode) >= evaluateNumber(rightNode);
+                case LESS:
+                    return evaluateNumber(leftNode) <  evaluateNumber(rightNode);
+                case LESS_EQUAL:
+                    return evaluateNumber(leftNode) <= evaluateNumber(rightNode);
+            }
+        }
+
+        Object left  = evaluate(leftNode);
+        Object right = evaluate(rightNode);
+
+        switch (type) {
+            case GREATER:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) >  ((double) right);
+            case GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) >= ((double) right);
+            case LESS:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) <  ((double) right);
+            case LESS_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) <= ((double) right);
+            case BANG_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return !Interpreter.isEqual(left, right);
+            case EQUAL_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return Interpreter.isEqual(left, right);
+            case STAR:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) * ((double) right);
+            case SLASH:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) / ((double) right);
+            case MINUS:
+                checkNumberOperands(operator, left, right);
+                return ((double) left) - ((double) right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double)
+                    return ((double) left) + ((double) right);
+                if (left instanceof CharSequence && right instanceof CharSequence)
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
+                throw new RuntimeError(ast.token(operator),
+                        "Operands must be two numbers or two strings");
+        }
+
+        // unreachable
+        return null;
+    }
+
+    // Interpreter.evaluateNumber, over indices
+    private double evaluateNumber(int node) {
+        switch (ast.kind(node)) {
+            case FlatAst.LITERAL:
+                return (double) ast.literalValue(node);
+            case FlatAst.GROUPING:
+                return evaluateNumber(ast.groupingExpression(node));
+            case FlatAst.UNARY: {
+                int right = ast.unaryRight(node);
+                if (ast.numeric(right))
+                    return -evaluateNumber(right);
+
+                Object value = evaluate(right);
+                checkNumberOperand(ast.unaryOperator(node), value);
+                return -((double) value);
+            }
+            case FlatAst.VARIABLECONSTANT:
+                return evaluateNumber(ast.variableConstantOriginal(node));
+            case FlatAst.VARIABLEVARIABLE:
+                return evaluateNumber(ast.variableVariableOriginal(node));
+        }
+
+        int leftNode  = ast.binaryLeft(node);
+        int rightNode = ast.binaryRight(node);
+        double left = 0, right = 0;
+        Object leftValue = null, rightValue = null;
+
+        if (ast.numeric(leftNode))
+            left = evaluateNumber(leftNode);
+        else
+            leftValue = evaluate(leftNode);
+
+        if (ast.numeric(rightNode))
+            right = evaluateNumber(rightNode);
+        else
+            rightValue = evaluate(rightNode);
+
+        if (!ast.numeric(leftNode)) {
+            if (!(leftValue instanceof Double))
+                throw new RuntimeError(ast.token(ast.binaryOperator(node)), "Operands must be a number.");
+            left = (double) leftValue;
+        }
+        if (!ast.numeric(rightNode)) {
+            if (!(rightValue instanceof Double))
+                throw new RuntimeError(ast.token(ast.binaryOperator(node)), "Operands must be a number.");
+            right = (double) rightValue;
+        }
+
+        switch (ast.type(ast.binaryOperator(node))) {
+            case STAR: return left * right;
+            case SLASH: return left / right;
+            case MINUS: return left - right;
+            case PLUS: return left + right;
+        }
+
+        // unreachable
+        return 0;
+    }
+
+    @Override
+    public Object visitGrouping(int node) {
+        return evaluate(ast.groupingExpression(node));
+    }
+
+    private Object evaluate(int node) {
+        return ast.accept(node, (FlatAst.ExprVisitor<Object>) this);
+    }
+
+    private void execute(int node) {
+        ast.accept(node, (FlatAst.StmtVisitor<Void>) this);
+    }
+
+    @Override
+    public Void visitBlock(int node) {
+        Environment previous = environment;
+        try {
+            environment = new Environment(environment, ast.blockLocals(node));
+
+            int statements = ast.blockStatements(node);
+            for (int i = 0; i < ast.size(statements); i++)
+                execute(ast.get(statements, i));
+        } finally {
+            environment = previous;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrint(int node) {
+        Object value = evaluate(ast.printExpression(node));
+        numbers.println(value, out);
+        return null;
+    }
+
+    @Override
+    public Void visitVar(int node) {
+        Object value = null;
+        if (ast.varInitializer(node) >= 0)
+            value = evaluate(ast.varInitializer(node));
+
+        if (ast.varSlot(node) < 0)
+            globals.defineGlobal(ast.varGlobal(node), value);
+        else
+            environment.define(ast.varSlot(node), value);
+        return null;
+    }
+
+    @Override
+    public Object visitAssign(int node) {
+        Object value = evaluate(ast.assignValue(node));
+
+        if (ast.assignDepth(node) >= 0) {
+            environment.assignAt(ast.assignDepth(node), ast.assignSlot(node), value);
+            return value;
+        }
+
+        int global = ast.assignGlobal(node);
+        Environment.Binding binding = globals.binding(global);
+        if (binding != null)
+            binding.value = value;
+        else // not defined. let Environment say so
+            globals.assignGlobal(global, ast.token(ast.assignName(node)), value);
+        return value;
+    }
+
+    @Override
+    public Void visitExpression(int node) {
+        evaluate(ast.expressionExpression(node));
+        return null;
+    }
+}
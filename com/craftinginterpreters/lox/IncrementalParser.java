@@ -0,0 +1,259 @@
+package com.craftinginterpreters.lox;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// a document that stays parsed between edits. it keeps every top-level
+// declaration with its tokens, tree and errors, and an edit re-parses from
+// just before the declaration it lands in until the tokens line up with an
+// old declaration again past the edit. everything after that is reused,
+// moved by however many chars and lines the edit added. the end result is
+// the same as parsing the whole text again: same statements, same errors
+// in the same order.
+// not safe to use from two threads at once
+class IncrementalParser {
+
+    // a top-level declaration owns the text from its first token up to the
+    // next one's, so comments and errors after it are its too. the first
+    // declaration starts at the very beginning of the document
+    private static class Declaration {
+        int start;
+        int line;          // the Scanner's line at start
+        Stmt stmt;         // null if it didn't parse
+        Token[] tokens;    // for moving it to other lines
+        List<Diagnostic> diagnostics;
+    }
+
+    // an error to report again each time. scanner errors only have a line
+    private static class Diagnostic {
+        final Token token;
+        int line;
+        final String message;
+
+        Diagnostic(Token token, int line, String message) {
+            this.token = token;
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    // keeps errors instead of printing them, filed under whichever
+    // declaration is being parsed
+    private static class Recorder extends ErrorReporter {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+
+        Recorder() {
+            super(Writer.nullWriter());
+        }
+
+        @Override
+        void error(Token token, String message) {
+            diagnostics.add(new Diagnostic(token, token.line, message));
+        }
+
+        @Override
+        void error(int line, String message) {
+            diagnostics.add(new Diagnostic(null, line, message));
+        }
+    }
+
+    // every token the Scanner hands the Parser, with where it starts
+    private static class TokenLog {
+        Token[] tokens = new Token[64];
+        int[] starts = new int[64];
+        int[] lines = new int[64];
+        int count = 0;
+
+        Token add(Token token, int start, int line) {
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                lines  = Arrays.copyOf(lines, count * 2);
+            }
+            tokens[count] = token;
+            starts[count] = start;
+            lines[count]  = line;
+            count++;
+            return token;
+        }
+    }
+
+    private char[] source;
+    private List<Declaration> declarations = new ArrayList<>();
+    // errors from a document with no declarations in it at all
+    private List<Diagnostic> leftover = new ArrayList<>();
+    private int reparsed = 0;
+
+    IncrementalParser(String source) {
+        this.source = source.toCharArray();
+        parse(0, 1, declarations, new ArrayList<>(), 0, 0, 0, 0);
+        reparsed = declarations.size();
+    }
+
+    String source() {
+        return new String(source);
+    }
+
+    // how many declarations the last edit (or the first parse) went through
+    int reparsed() {
+        return reparsed;
+    }
+
+    // replace removed chars at offset with inserted
+    void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length)
+            throw new IndexOutOfBoundsException(
+                    "edit " + offset + "+" + removed + " outside 0.." + source.length);
+
+        int lineDelta = newlines(inserted.toCharArray(), 0, inserted.length())
+                      - newlines(source, offset, offset + removed);
+        int delta = inserted.length() - removed;
+
+        char[] text = new char[source.length + delta];
+        System.arraycopy(source, 0, text, 0, offset);
+        inserted.getChars(0, inserted.length(), text, offset);
+        System.arraycopy(source, offset + removed, text, offset + inserted.length(),
+                source.length - offset - removed);
+        source = text;
+
+        // start one declaration before the one the edit lands in. that one
+        // hasn't changed, so the region always begins with a declaration
+        // and anything the edit does to the text between them is reported
+        // the way a full parse would
+        List<Declaration> old = declarations;
+        int first = Math.max(0, containing(offset) - 1);
+
+        List<Declaration> updated = new ArrayList<>(old.size() + 1);
+        updated.addAll(old.subList(0, Math.min(first, old.size())));
+        int start = old.isEmpty() ? 0 : old.get(first).start;
+        int line  = old.isEmpty() ? 1 : old.get(first).line;
+
+        int before = updated.size();
+        int resume = parse(start, line, updated, old, first + 1,
+                           offset + removed, offset + inserted.length(), delta);
+        reparsed = updated.size() - before;
+
+        for (int i = resume; i < old.size(); i++) {
+            Declaration declaration = old.get(i);
+            move(declaration, delta, lineDelta);
+            updated.add(declaration);
+        }
+        declarations = updated;
+    }
+
+    // the statements Parser.parse() would give for the whole document,
+    // nulls where a declaration didn't parse
+    List<Stmt> statements() {
+        List<Stmt> statements = new ArrayList<>(declarations.size());
+        for (Declaration declaration : declarations)
+            statements.add(declaration.stmt);
+        return statements;
+    }
+
+    // every scan and parse error in the document, in the order a full
+    // parse would report them
+    void report(ErrorReporter reporter) {
+        report(leftover, reporter);
+        for (Declaration declaration : declarations)
+            report(declaration.diagnostics, reporter);
+    }
+
+    private static void report(List<Diagnostic> diagnostics, ErrorReporter reporter) {
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.token != null)
+                reporter.error(diagnostic.token, diagnostic.message);
+            else
+                reporter.error(diagnostic.line, diagnostic.message);
+        }
+    }
+
+    // parse declarations from start, adding them to into. stops early once
+    // past newEditEnd the next token starts exactly where an old declaration
+    // (from index next on) did, and returns that one's index for the caller
+    // to reuse from. otherwise returns old.size()
+    private int parse(int start, int line, List<Declaration> into,
+                      List<Declaration> old, int next,
+                      int oldEditEnd, int newEditEnd, int delta) {
+        Recorder recorder = new Recorder();
+        Scanner scanner = new Scanner(source, start, line, recorder);
+        TokenLog log = new TokenLog();
+        Parser parser = new Parser(
+                () -> log.add(scanner.nextToken(), scanner.tokenStart, scanner.tokenLine),
+                recorder);
+
+        int parsed = 0;
+        int first = 0; // in log, the next declaration's first token
+        while (parser.hasNext()) {
+            Declaration declaration = new Declaration();
+            declaration.start = parsed == 0 ? start : log.starts[first];
+            declaration.line  = parsed == 0 ? line : log.lines[first];
+            declaration.diagnostics = recorder.diagnostics;
+            declaration.stmt = parser.next();
+            recorder.diagnostics = new ArrayList<>();
+            into.add(declaration);
+            parsed++;
+
+            // the lookahead is the following declaration's first token,
+            // unless it's EOF and this one has the rest of the document
+            int last = log.count - 1;
+            boolean end = log.tokens[last].type == EOF;
+            declaration.tokens = Arrays.copyOfRange(log.tokens, first, end ? log.count : last);
+            if (end)
+                break;
+            first = last;
+
+            int resync = log.starts[first] - delta; // same place, old offsets
+            if (log.starts[first] >= newEditEnd) {
+                while (next < old.size() && old.get(next).start < resync)
+                    next++;
+                if (next < old.size() && old.get(next).start == resync
+                        && resync >= oldEditEnd) {
+                    leftover = new ArrayList<>();
+                    return next;
+                }
+            }
+        }
+
+        // errors with no declaration to go with, from an empty document
+        leftover = into.isEmpty() ? recorder.diagnostics : new ArrayList<>();
+        return old.size();
+    }
+
+    // index of the declaration whose text offset is in
+    private int containing(int offset) {
+        int low = 0, high = declarations.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (declarations.get(middle).start <= offset)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    private static void move(Declaration declaration, int delta, int lineDelta) {
+        declaration.start += delta;
+        if (lineDelta == 0)
+            return;
+
+        declaration.line += lineDelta;
+        for (Token token : declaration.tokens)
+            token.line += lineDelta;
+        for (Diagnostic diagnostic : declaration.diagnostics)
+            if (diagnostic.token == null)
+                diagnostic.line += lineDelta;
+    }
+
+    private static int newlines(char[] chars, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++)
+            if (chars[i] == '\n')
+                count++;
+        return count;
+    }
+}
@@ -1,5 +1,9 @@
 package com.craftinginterpreters.lox;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.List;
 
 // com/craftinginterpreters/lox/Interpreter.java:5: error: Interpreter is not abstract and does not override abstract method visitVariableExpr(Variable) in Visitor
@@ -10,17 +14,90 @@ import java.util.List;
 
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+    // how much printed output to collect before writing it out
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    Environment globals = new Environment();
+    private Environment environment = globals;
+
+    // print goes here. only written through when the buffer fills or
+    // interpret() finishes, so a print doesn't cost a locked write each
+    private final PrintWriter out;
+    private final NumberFormatter numbers = new NumberFormatter();
+    private final ErrorReporter reporter;
+
+    // set for --profile. null otherwise, which costs one check per node
+    Profiler profiler;
+
+    // true inside run(), whose nodes other interpreters may be running too
+    private boolean shared = false;
+
+    Interpreter(ErrorReporter reporter) {
+        this(new OutputStreamWriter(System.out), reporter);
+    }
+
+    // an embedder can capture output by handing in their own Writer
+    Interpreter(Writer output, ErrorReporter reporter) {
+        this(output, OUTPUT_BUFFER, reporter);
+    }
+
+    // a smaller buffer for when there are lots of interpreters around
+    Interpreter(Writer output, int bufferSize, ErrorReporter reporter) {
+        this.out = new PrintWriter(new BufferedWriter(output, bufferSize), false);
+        this.reporter = reporter;
+    }
+
+    // forget every global, so the interpreter can be reused for a new script
+    void reset() {
+        globals = new Environment();
+        environment = globals;
+    }
 
     void interpret(List<Stmt> statements) {
         try {
             for (Stmt statement : statements)
                 execute(statement);
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            out.flush(); // everything printed so far comes before the error
+            reporter.runtimeError(error);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // like interpret(), but hands back the value of the last statement if
+    // it's an expression, and leaves a RuntimeError to the caller. the
+    // statements can be shared with other interpreters, so nothing gets
+    // put in their inline caches: another interpreter's globals would
+    // only knock it out again, and it would keep this one's alive
+    Object run(List<Stmt> statements) {
+        shared = true;
+        try {
+            int last = statements.size() - 1;
+            for (int i = 0; i < last; i++)
+                execute(statements.get(i));
+            if (last < 0)
+                return null;
+
+            Stmt end = statements.get(last);
+            if (end instanceof Stmt.Expression) {
+                Object value = evaluate(((Stmt.Expression) end).expression);
+                // ropes don't leave the interpreter
+                return value instanceof Rope ? value.toString() : value;
+            }
+            execute(end);
+            return null;
+        } finally {
+            shared = false;
+            out.flush();
         }
     }
 
+    // set a global by its SymbolTable number, for values from outside
+    void define(int global, Object value) {
+        globals.defineGlobal(global, value);
+    }
+
     @Override // just return the value of a literal
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
@@ -28,6 +105,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override // a minus or a !
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.numeric)
+            return box(evaluateNumber(expr));
+
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
@@ -35,7 +115,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return !isTruthy(right);
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -((double) right);
+                return box(-((double) right));
         }
 
         // unreachable
@@ -44,7 +124,115 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if (profiler != null)
+            countLookup(expr.depth);
+        if (expr.depth >= 0)
+            return environment.getAt(expr.depth, expr.slot);
+        return global(expr).value;
+    }
+
+    // a global's cell, through the node's inline cache
+    private Environment.Binding global(Expr.Variable expr) {
+        // a local copy, since the node may be shared
+        Environment.Binding binding = expr.binding;
+        if (binding != null && binding.owner == globals) {
+            if (profiler != null)
+                profiler.cacheHits++;
+            return binding;
+        }
+
+        // first time here, or a different set of globals. this throws
+        // if the variable isn't defined yet, and then nothing is cached
+        globals.getGlobal(expr.global, expr.name);
+        binding = globals.binding(expr.global);
+        if (!shared)
+            expr.binding = binding;
+        if (profiler != null)
+            profiler.cacheMisses++;
+        return binding;
+    }
+
+    // the fused nodes from NodeFuser. each one does what the tree it
+    // replaced would have, in the same order, down to which token a
+    // RuntimeError points at and what it says
+
+    @Override // x op 2
+    public Object visitVariableConstantExpr(Expr.VariableConstant expr) {
+        return operate(visitVariableExpr(expr.variable), expr.operator, expr.constant);
+    }
+
+    @Override // x op y
+    public Object visitVariableVariableExpr(Expr.VariableVariable expr) {
+        Object left  = visitVariableExpr(expr.left);
+        Object right = visitVariableExpr(expr.right);
+
+        if (left instanceof Double)
+            return operate(left, expr.operator, right);
+
+        if (expr.operator.type == TokenType.PLUS) {
+            if (left instanceof CharSequence && right instanceof CharSequence)
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            throw new RuntimeError(expr.operator,
+                    "Operands must be two numbers or two strings");
+        }
+        throw new RuntimeError(expr.operator, "Operands must be a number.");
+    }
+
+    @Override // i = i + 1, read and written back with one lookup
+    public Object visitIncrementExpr(Expr.Increment expr) {
+        Expr.Variable variable = expr.variable;
+        if (profiler != null)
+            countLookup(variable.depth);
+
+        if (variable.depth >= 0) {
+            Object value = operate(environment.getAt(variable.depth, variable.slot),
+                                   expr.operator, expr.constant);
+            environment.assignAt(variable.depth, variable.slot, value);
+            return value;
+        }
+
+        Environment.Binding binding = global(variable);
+        Object value = operate(binding.value, expr.operator, expr.constant);
+        binding.value = value;
+        return value;
+    }
+
+    // left op right for an operator NodeFuser fuses, with a number on the right
+    private Object operate(Object left, Token operator, Object right) {
+        if (right instanceof Double)
+            return operate(left, operator, (double) right);
+        if (operator.type == TokenType.PLUS)
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+        throw new RuntimeError(operator, "Operands must be a number.");
+    }
+
+    private Object operate(Object left, Token operator, double right) {
+        if (!(left instanceof Double)) {
+            if (operator.type == TokenType.PLUS)
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+            throw new RuntimeError(operator, "Operands must be a number.");
+        }
+
+        double value = (double) left;
+        switch (operator.type) {
+            case GREATER:       return value >  right;
+            case GREATER_EQUAL: return value >= right;
+            case LESS:          return value <  right;
+            case LESS_EQUAL:    return value <= right;
+        }
+        return box(arithmetic(operator, value, right));
+    }
+
+    private static double arithmetic(Token operator, double left, double right) {
+        switch (operator.type) {
+            case STAR:  return left * right;
+            case SLASH: return left / right;
+            case MINUS: return left - right;
+            case PLUS:  return left + right;
+        }
+
+        // unreachable
+        return 0;
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -53,22 +241,33 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    // method from the book
-    // private void checkNumberOperands(Token operator, Object left, Object right) {
-    //     if (left instanceof Double && right instanceof Double)
-    //         return;
-    //     throw new RuntimeError(operator, "Operands must be a number.");
-    // }
-
-    private void checkNumberOperands(Token operator, Object... operands) {
-        for (Object operand : operands) 
-            if (!(operand instanceof Double))
-                throw new RuntimeError(operator, "Operands must be a number.");
+    // method from the book. the varargs version allocated an array per call
+    private void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new RuntimeError(operator, "Operands must be a number.");
     }
 
-
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        // arithmetic: stay in primitive doubles and box only the final result
+        if (expr.numeric)
+            return box(evaluateNumber(expr));
+
+        // comparing two numeric subtrees doesn't need to box them either
+        if (expr.left.numeric && expr.right.numeric) {
+            switch (expr.operator.type) {
+                case GREATER:
+                    return evaluateNumber(expr.left) >  evaluateNumber(expr.right);
+                case GREATER_EQUAL:
+                    return evaluateNumber(expr.left) >= evaluateNumber(expr.right);
+                case LESS:
+                    return evaluateNumber(expr.left) <  evaluateNumber(expr.right);
+                case LESS_EQUAL:
+                    return evaluateNumber(expr.left) <= evaluateNumber(expr.right);
+            }
+        }
+
         Object left  = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
@@ -93,19 +292,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return isEqual(left, right);
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
-                return ((double) left) * ((double) right);
+                return box(((double) left) * ((double) right));
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
-                return ((double) left) / ((double) right);
+                return box(((double) left) / ((double) right));
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
-                return ((double) left) - ((double) right);
+                return box(((double) left) - ((double) right));
             case PLUS: // plus can concatenate strings
                 if (left instanceof Double && right instanceof Double) {
-                    return ((double) left) + ((double) right);
+                    return box(((double) left) + ((double) right));
                 }
-                if (left instanceof String && right instanceof String) {
-                    return ((String) left) + ((String) right);
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
                 }
                 // If you can add a number to a string
                 // if (left instanceof String && right instanceof Double) {
@@ -120,7 +319,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     // Nil and false are false. Everything else is true
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null)
             return false;
 
@@ -130,7 +329,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         // nil is only equal to nil
         if (a == null && b == null)
             return true;
@@ -138,40 +337,153 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (a == null)
             return false;
 
+        // a Rope and a String can have the same chars
+        if (a instanceof CharSequence && b instanceof CharSequence)
+            return ((CharSequence) a).length() == ((CharSequence) b).length()
+                && a.toString().equals(b.toString());
+
         return a.equals(b);
 
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null)
             return "nil";
 
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0"))
-                text = text.substring(0, text.length()-2);
-            return text;
-        }
+        if (object instanceof Double)
+            return NumberFormatter.toString((double) object);
 
         return object.toString();
     }
 
+    // evaluate an expression the Resolver marked numeric without boxing
+    // any of the intermediate results. operands that aren't numeric
+    // themselves (variables, mostly) are evaluated normally and checked
+    // only after both sides have run, same order as visitBinaryExpr
+    private double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return (double) ((Expr.Literal) expr).value;
+
+        if (expr instanceof Expr.Grouping)
+            return evaluateNumber(((Expr.Grouping) expr).expression);
+
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (unary.right.numeric)
+                return -evaluateNumber(unary.right);
+
+            Object right = evaluate(unary.right);
+            checkNumberOperand(unary.operator, right);
+            return -((double) right);
+        }
+
+        // fused nodes are only ever numeric for - * and /
+        if (expr instanceof Expr.VariableConstant) {
+            Expr.VariableConstant fused = (Expr.VariableConstant) expr;
+            return arithmetic(fused.operator,
+                    number(visitVariableExpr(fused.variable), fused.operator), fused.constant);
+        }
+
+        if (expr instanceof Expr.VariableVariable) {
+            Expr.VariableVariable fused = (Expr.VariableVariable) expr;
+            Object left  = visitVariableExpr(fused.left);
+            Object right = visitVariableExpr(fused.right);
+            return arithmetic(fused.operator,
+                    number(left, fused.operator), number(right, fused.operator));
+        }
+
+        Expr.Binary binary = (Expr.Binary) expr;
+        double left = 0, right = 0;
+        Object leftValue = null, rightValue = null;
+
+        if (binary.left.numeric)
+            left = evaluateNumber(binary.left);
+        else
+            leftValue = evaluate(binary.left);
+
+        if (binary.right.numeric)
+            right = evaluateNumber(binary.right);
+        else
+            rightValue = evaluate(binary.right);
+
+        if (!binary.left.numeric) {
+            if (!(leftValue instanceof Double))
+                throw new RuntimeError(binary.operator, "Operands must be a number.");
+            left = (double) leftValue;
+        }
+        if (!binary.right.numeric) {
+            if (!(rightValue instanceof Double))
+                throw new RuntimeError(binary.operator, "Operands must be a number.");
+            right = (double) rightValue;
+        }
+
+        switch (binary.operator.type) {
+            case STAR:  return left * right;
+            case SLASH: return left / right;
+            case MINUS: return left - right;
+            case PLUS:  return left + right;
+        }
+
+        // unreachable
+        return 0;
+    }
+
+    private static double number(Object value, Token operator) {
+        if (!(value instanceof Double))
+            throw new RuntimeError(operator, "Operands must be a number.");
+        return (double) value;
+    }
+
     @Override // recurse through a parenthesized expression
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
     }
 
     private Object evaluate(Expr expr) {
-        return expr.accept(this);
+        if (profiler == null)
+            return expr.accept(this);
+
+        long start = profiler.enter(expr);
+        try {
+            return expr.accept(this);
+        } finally {
+            profiler.exit(expr, start);
+        }
     }
 
     private void execute(Stmt stmt) {
-        stmt.accept(this);
+        if (profiler == null) {
+            stmt.accept(this);
+            return;
+        }
+
+        long start = profiler.enter(stmt);
+        try {
+            stmt.accept(this);
+        } finally {
+            profiler.exit(stmt, start);
+        }
+    }
+
+    // every arithmetic result that leaves as an Object comes through here
+    private Object box(double value) {
+        if (profiler != null)
+            profiler.boxedDoubles++;
+        return value;
+    }
+
+    private void countLookup(int depth) {
+        if (depth < 0) {
+            profiler.globalLookups++;
+        } else {
+            profiler.localLookups++;
+            profiler.hopsWalked += depth;
+        }
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        executeBlock(stmt.statements, new Environment(environment, stmt.locals));
         return null;
     }
 
@@ -190,7 +502,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        numbers.println(value, out);
         return null;
     }
 
@@ -200,7 +512,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (stmt.initializer != null)
             value = evaluate(stmt.initializer);
 
-        environment.define(stmt.name.lexeme, value);
+        if (stmt.slot < 0)
+            globals.defineGlobal(stmt.global, value);
+        else
+            environment.define(stmt.slot, value);
 
         return null;
     }
@@ -209,7 +524,27 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        environment.assign(expr.name, value);
+        if (profiler != null)
+            countLookup(expr.depth);
+        if (expr.depth >= 0) {
+            environment.assignAt(expr.depth, expr.slot, value);
+            return value;
+        }
+
+        // same inline cache as visitVariableExpr
+        Environment.Binding binding = expr.binding;
+        if (binding != null && binding.owner == globals) {
+            if (profiler != null)
+                profiler.cacheHits++;
+            binding.value = value;
+            return value;
+        }
+
+        globals.assignGlobal(expr.global, expr.name, value);
+        if (!shared)
+            expr.binding = globals.binding(expr.global);
+        if (profiler != null)
+            profiler.cacheMisses++;
         return value;
     }
 
@@ -3,43 +3,186 @@ package com.craftinginterpreters.lox;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
 
 import com.craftinginterpreters.lox.*;
 import com.craftinginterpreters.lox.Scanner;
 
 public class Lox {
-    static final Interpreter interpreter = new Interpreter();
+    static final ErrorReporter reporter = new ErrorReporter();
+    static final SymbolTable symbols = new SymbolTable();
+    static final Interpreter interpreter = new Interpreter(reporter);
+    static final VM vm = new VM(reporter);
+    static final FlatInterpreter flat = new FlatInterpreter(reporter);
 
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    // run on the bytecode VM instead of walking the tree
+    static boolean useVm = false;
+    // walk the tree laid out as a FlatAst instead
+    static boolean useFlat = false;
+    // reuse parsed scripts from the ScriptCache
+    static boolean useCache = true;
+    // parse a script's top-level statements in pieces, see ParallelParser
+    static boolean useParallel = false;
+
+    // folding, resolving and running a tree recurse once per level it
+    // nests, so everything here runs on a thread with room for machine
+    // generated nesting, and the Parser lets scripts nest that deep. the
+    // memory is only reserved, and used as deep as a script goes. --batch
+    // and --serve run scripts on threads of their own, at the Parser's
+    // default limit
+    private static final long SCRIPT_STACK = 512L << 20;
+    private static final int SCRIPT_NESTING = 200_000;
 
     public static void main(String[] args) throws IOException {
+        Throwable[] failed = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(args);
+            } catch (Throwable e) {
+                failed[0] = e;
+            }
+        }, "jlox", SCRIPT_STACK);
+        thread.start();
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failed[0] instanceof IOException)
+            throw (IOException) failed[0];
+        if (failed[0] instanceof RuntimeException)
+            throw (RuntimeException) failed[0];
+        if (failed[0] instanceof Error)
+            throw (Error) failed[0];
+    }
+
+    private static void start(String[] args) throws IOException {
+        boolean clearCache = false;
+        boolean batch = false;
+        boolean serve = false;
+        while (args.length > 0 && args[0].startsWith("--")) {
+            switch (args[0]) {
+                case "--vm":          useVm = true;       break;
+                case "--flat":        useFlat = true;     break;
+                case "--no-cache":    useCache = false;   break;
+                case "--parallel":    useParallel = true; break;
+                case "--clear-cache": clearCache = true;  break;
+                case "--batch":       batch = true;       break;
+                case "--serve":       serve = true;       break;
+                case "--profile":     interpreter.profiler = new Profiler(); break;
+                default:
+                    usage();
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        if (clearCache) {
+            ScriptCache.standard().clear();
+            if (args.length == 0)
+                return;
+        }
+
         if (args.length > 1) {
-            System.out.println("Usage: jlox <script>");
-            System.exit(64);
+            usage();
+        } else if (serve) {
+            if (args.length == 0)
+                usage();
+            new SessionServer(Integer.parseInt(args[0])).serve();
+        } else if (batch) {
+            if (args.length == 0)
+                usage();
+            runBatch(args[0]);
         } else if (args.length == 1) {
-            runFile(args[0]);
+            runScript(args[0]);
         } else {
             runPrompt();
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm | --flat] [--no-cache] [--clear-cache] [--parallel] [--profile] <script>\n"
+                         + "       (--profile times the tree-walker, not --vm or --flat)\n"
+                         + "       jlox --batch <directory|manifest>\n"
+                         + "       jlox --serve <port>");
+        System.exit(64);
+    }
+
+    private static void runScript(String path) throws IOException {
+        ScriptCache cache = null;
+        List<Stmt> statements = null;
+
+        if (useCache) {
+            cache = ScriptCache.standard();
+            statements = cache.load(ScriptCache.hash(Paths.get(path)), symbols);
+        }
+
+        if (statements == null) {
+            // a miss hashes the file again as it's parsed, and stores the
+            // result under that, in case it changed since it was hashed
+            MessageDigest digest = cache != null ? ScriptCache.digest() : null;
+            if (useParallel) {
+                // the pieces are cut from the whole token list, so no streaming
+                byte[] bytes = Files.readAllBytes(Paths.get(path));
+                if (digest != null)
+                    digest.update(bytes);
+                String source = new String(bytes, Charset.defaultCharset());
+                statements = compile(ParallelParser.parse(source, SCRIPT_NESTING, reporter), reporter, symbols);
+            } else {
+                // the scanner reads the file as it goes rather than all at once
+                InputStream in = Files.newInputStream(Paths.get(path));
+                if (digest != null)
+                    in = new DigestInputStream(in, digest);
+                try (Reader reader = new InputStreamReader(in, Charset.defaultCharset())) {
+                    statements = compileScript(new Scanner(reader, reporter));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+
+            if (statements != null && cache != null)
+                cache.store(ScriptCache.key(digest), statements);
+        }
 
-        if (hadError)
+        if (statements != null) {
+            if (useFlat) {
+                // the arrays are all FlatInterpreter needs. the tree is let
+                // go of before it runs rather than kept alive alongside them
+                FlatAst ast = FlatAst.of(statements);
+                statements = null;
+                flat.interpret(ast);
+            } else {
+                execute(statements);
+            }
+        }
+        dumpProfile();
+
+        if (reporter.hadError)
             System.exit(65);
 
-        if (hadRuntimeError)
+        if (reporter.hadRuntimeError)
             System.exit(70);
     }
 
+    // many scripts at once, across all cores. see BatchRunner
+    private static void runBatch(String target) throws IOException {
+        List<Path> scripts = BatchRunner.scripts(Paths.get(target));
+        List<BatchRunner.Result> results = new BatchRunner().run(scripts);
+        System.exit(BatchRunner.summarize(results, System.out));
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -49,46 +192,74 @@ public class Lox {
             try {
                 run(reader.readLine());
             } catch (NullPointerException e) { // ctrl+D sends EOF
+                dumpProfile();
                 return;
             } 
-            hadError = false;
+            reporter.hadError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    // to stderr so it doesn't mix with what the script printed
+    private static void dumpProfile() {
+        if (interpreter.profiler != null && !useVm && !useFlat)
+            interpreter.profiler.dump(System.err);
+    }
 
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        
-        if (hadError)
+    private static void run(String source) {
+        List<Stmt> statements = compileScript(new Scanner(source, reporter));
+        if (statements == null)
             return;
 
-        interpreter.interpret(statements);
-        // System.out.println(new AstPrinter().print(expression));
+        if (useFlat) {
+            FlatAst ast = FlatAst.of(statements); // and drop the tree, as in runScript
+            statements = null;
+            flat.interpret(ast);
+        } else {
+            execute(statements);
+        }
     }
 
-    // show an error to the user when a bad token is encountered
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF)
-            report(token.line, " at end", message);
-        else
-            report(token.line, " at '" + token.lexeme + "'", message);
+    // compile() with room to nest as deep as SCRIPT_STACK allows
+    private static List<Stmt> compileScript(Scanner scanner) {
+        Parser parser = new Parser(scanner, reporter);
+        parser.maxNesting = SCRIPT_NESTING;
+        return compile(parser.parse(), reporter, symbols);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    // scan, parse, fold and resolve, numbering globals in symbols. null if
+    // there were any errors
+    static List<Stmt> compile(Scanner scanner, ErrorReporter reporter, SymbolTable symbols) {
+        Parser parser = new Parser(scanner, reporter);
+        return compile(parser.parse(), reporter, symbols);
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n"
-                    + "[line " + error.token.line + "]");
-        hadRuntimeError = true;
+    // fold and resolve statements that were already parsed
+    static List<Stmt> compile(List<Stmt> statements, ErrorReporter reporter, SymbolTable symbols) {
+        if (reporter.hadError)
+            return null;
+
+        statements = new ConstantFolder().fold(statements);
+
+        Resolver resolver = new Resolver(reporter, symbols);
+        resolver.resolve(statements);
+
+        if (reporter.hadError)
+            return null;
+
+        return statements;
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    // on the VM or the tree-walker. --flat is run by whoever owns the
+    // tree, so it can let go of it first
+    private static void execute(List<Stmt> statements) {
+        if (useVm) {
+            Chunk chunk = new Compiler(reporter).compile(statements);
+            if (reporter.hadError)
+                return;
+            vm.interpret(chunk);
+        } else {
+            interpreter.interpret(new NodeFuser().fuse(statements));
+        }
+        // System.out.println(new AstPrinter().print(expression));
     }
 }
@@ -0,0 +1,340 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// embedding API. an engine hands out Contexts, each with its own globals,
+// output and error reporting, so any number of scripts can run side by side
+// in one JVM, one context per thread at a time. contexts taken with
+// acquire() come from a pool of warm ones and go back to it on close()
+public final class LoxEngine {
+    // same codes the command line exits with
+    public static final int OK            = 0;
+    public static final int COMPILE_ERROR = 65;
+    public static final int RUNTIME_ERROR = 70;
+
+    private final ConcurrentLinkedQueue<Context> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+    // numbers the globals of everything compiled for this engine's contexts
+    private final SymbolTable symbols = new SymbolTable();
+
+    public LoxEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    // keep at most maxIdle released contexts around for reuse
+    public LoxEngine(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    // a context of its own, not pooled. close() does nothing to it
+    public Context newContext(Writer out, Writer err) {
+        return newContext(out, err, Interpreter.OUTPUT_BUFFER);
+    }
+
+    // same, buffering at most outputBuffer chars of printed output. for
+    // hosts keeping many long lived, mostly idle contexts
+    public Context newContext(Writer out, Writer err, int outputBuffer) {
+        Context context = new Context(null, symbols, outputBuffer);
+        context.redirect(out, err);
+        return context;
+    }
+
+    // a pooled context with no globals defined, writing to out and err
+    public Context acquire(Writer out, Writer err) {
+        Context context = idle.poll();
+        if (context == null) {
+            context = new Context(this, symbols, Interpreter.OUTPUT_BUFFER);
+        } else {
+            idleCount.decrementAndGet();
+            context.reset();
+        }
+        context.redirect(out, err);
+        return context;
+    }
+
+    // compile statements once to run many times with Context.evaluate().
+    // the named parameters are globals the caller gives values to on each
+    // run. null if it doesn't compile, with the errors written to err
+    public Program prepare(String source, Writer err, String... parameters) {
+        ErrorReporter reporter = new ErrorReporter(err);
+        return program(Lox.compile(new Scanner(source, reporter), reporter, symbols), parameters);
+    }
+
+    // same, for a single expression with no semicolon after it. evaluate()
+    // returns its value
+    public Program prepareExpression(String expression, Writer err, String... parameters) {
+        ErrorReporter reporter = new ErrorReporter(err);
+        Stmt statement = new Parser(new Scanner(expression, reporter), reporter).parseExpression();
+        return program(Lox.compile(Collections.singletonList(statement), reporter, symbols), parameters);
+    }
+
+    private Program program(List<Stmt> statements, String[] parameters) {
+        if (statements == null)
+            return null;
+
+        int[] globals = new int[parameters.length];
+        for (int i = 0; i < parameters.length; i++)
+            globals[i] = symbols.intern(parameters[i]);
+        return new Program(new NodeFuser().fuse(statements), parameters.clone(), globals, symbols);
+    }
+
+    private void release(Context context) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(context);
+        } else {
+            idleCount.decrementAndGet(); // pool's full, let it go
+        }
+    }
+
+    // one isolated interpreter. globals defined by one run() are still
+    // there for the next, like lines typed into the REPL.
+    // not safe to use from two threads at once
+    public static final class Context implements AutoCloseable {
+        private final LoxEngine pool;
+        private final SymbolTable symbols; // its engine's
+        private boolean discarded = false;
+        private final Redirect out = new Redirect();
+        private final Redirect err = new Redirect();
+        private final ErrorReporter reporter = new ErrorReporter(err);
+        private final Interpreter interpreter;
+
+        private Context(LoxEngine pool, SymbolTable symbols, int outputBuffer) {
+            this.pool = pool;
+            this.symbols = symbols;
+            this.interpreter = new Interpreter(out, outputBuffer, reporter);
+        }
+
+        // returns OK, COMPILE_ERROR or RUNTIME_ERROR
+        public int run(String source) {
+            return run(new Scanner(source, reporter));
+        }
+
+        public int run(Reader source) throws IOException {
+            try {
+                return run(new Scanner(source, reporter));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        // the document as it is now. only the declarations that changed
+        // since it was last run get parsed, folded, resolved and fused
+        // again, the rest are run as they were
+        public int run(Document document) {
+            reporter.reset();
+            document.parser.report(reporter);
+            if (reporter.hadError)
+                return COMPILE_ERROR;
+            return interpret(document.compile(reporter, symbols));
+        }
+
+        private int run(Scanner scanner) {
+            reporter.reset();
+            return run(Lox.compile(scanner, reporter, symbols));
+        }
+
+        // run a prepared program with its parameters set to values, in
+        // order. returns the value of its last statement if that's an
+        // expression, null otherwise. numbers can be any Number; Lox only
+        // has doubles, strings, booleans and nil. globals it defines stay
+        // defined, as with run(). the program has to come from this
+        // context's engine, whose SymbolTable its globals are numbered in
+        public Object evaluate(Program program, Object... values) {
+            if (program.symbols != symbols)
+                throw new IllegalArgumentException("program was prepared by another engine");
+            if (values.length != program.globals.length)
+                throw new IllegalArgumentException("expected " + program.globals.length
+                        + " values, got " + values.length);
+
+            for (int i = 0; i < values.length; i++)
+                interpreter.define(program.globals[i], value(program.parameters[i], values[i]));
+
+            try {
+                return interpreter.run(program.statements);
+            } catch (RuntimeError error) {
+                throw new EvaluationException(error.getMessage(), error.token.line);
+            }
+        }
+
+        private static Object value(String parameter, Object value) {
+            if (value == null || value instanceof Double
+                    || value instanceof String || value instanceof Boolean)
+                return value;
+            if (value instanceof Number)
+                return ((Number) value).doubleValue();
+            throw new IllegalArgumentException("'" + parameter + "' can't be a "
+                    + value.getClass().getName());
+        }
+
+        private int run(List<Stmt> statements) {
+            if (statements == null)
+                return COMPILE_ERROR;
+            return interpret(new NodeFuser().fuse(statements));
+        }
+
+        private int interpret(List<Stmt> fused) {
+            if (fused == null)
+                return COMPILE_ERROR;
+
+            interpreter.interpret(fused);
+            return reporter.hadRuntimeError ? RUNTIME_ERROR : OK;
+        }
+
+        // back to the pool, if it came from one
+        @Override
+        public void close() {
+            if (pool != null && !discarded) {
+                redirect(null, null);
+                pool.release(this);
+            }
+        }
+
+        // never goes back to the pool, close() just lets it go. for after
+        // a run that died partway with an Error, which can leave the
+        // interpreter torn in a way reset() doesn't put right
+        public void discard() {
+            discarded = true;
+        }
+
+        private void reset() {
+            interpreter.reset();
+            reporter.reset();
+        }
+
+        private void redirect(Writer out, Writer err) {
+            this.out.target = out;
+            this.err.target = err;
+        }
+    }
+
+    // a compiled program from prepare(). evaluating it doesn't change it,
+    // not even the inline caches the tree-walker keeps on global variable
+    // nodes, so any number of its engine's contexts can evaluate it at
+    // once and it holds on to none of their globals
+    public static final class Program {
+        private final List<Stmt> statements;
+        private final String[] parameters;
+        private final int[] globals; // the parameters' SymbolTable numbers
+        private final SymbolTable symbols; // the engine's that prepared it
+
+        private Program(List<Stmt> statements, String[] parameters, int[] globals,
+                        SymbolTable symbols) {
+            this.statements = statements;
+            this.parameters = parameters;
+            this.globals = globals;
+            this.symbols = symbols;
+        }
+    }
+
+    // a runtime error from Context.evaluate()
+    public static final class EvaluationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int line;
+
+        EvaluationException(String message, int line) {
+            super(message + " [line " + line + "]");
+            this.line = line;
+        }
+
+        public int line() {
+            return line;
+        }
+    }
+
+    // source that an editor keeps changing and running again. an edit only
+    // re-parses the top-level declarations it touches, see IncrementalParser,
+    // and only those are compiled again on the next run. the compiled
+    // declarations keep the tree-walker's inline caches, pointing at the
+    // globals of whichever context ran them last.
+    // not safe to use from two threads at once
+    public static final class Document {
+        private final IncrementalParser parser;
+        // each parsed declaration's folded, resolved and fused statement.
+        // a top-level declaration compiles the same whatever is around it
+        private Map<Stmt, Stmt> compiled = new IdentityHashMap<>();
+        private SymbolTable symbols; // what compiled's globals are numbered in
+
+        public Document(String source) {
+            parser = new IncrementalParser(source);
+        }
+
+        // replace removed chars at offset with inserted
+        public void edit(int offset, int removed, String inserted) {
+            parser.edit(offset, removed, inserted);
+        }
+
+        public String source() {
+            return parser.source();
+        }
+
+        // every declaration compiled, the new ones in one go. only called
+        // once the document parses without errors
+        private List<Stmt> compile(ErrorReporter reporter, SymbolTable symbols) {
+            // run by another engine's context, whose numbers are different
+            if (symbols != this.symbols) {
+                compiled = new IdentityHashMap<>();
+                this.symbols = symbols;
+            }
+
+            List<Stmt> statements = parser.statements();
+            List<Stmt> fresh = new ArrayList<>();
+            for (Stmt statement : statements)
+                if (!compiled.containsKey(statement))
+                    fresh.add(statement);
+
+            List<Stmt> folded = Lox.compile(fresh, reporter, symbols);
+            if (folded == null)
+                return null;
+            List<Stmt> fused = new NodeFuser().fuse(folded);
+
+            // rebuilt each time, so declarations that are gone are let go of
+            Map<Stmt, Stmt> next = new IdentityHashMap<>();
+            List<Stmt> result = new ArrayList<>(statements.size());
+            int i = 0;
+            for (Stmt statement : statements) {
+                Stmt done = compiled.get(statement);
+                if (done == null)
+                    done = fused.get(i++);
+                next.put(statement, done);
+                result.add(done);
+            }
+            compiled = next;
+            return result;
+        }
+    }
+
+    // lets a pooled context's output go somewhere new each time it's handed
+    // out, without rebuilding the interpreter around it
+    private static class Redirect extends Writer {
+        Writer target;
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (target != null)
+                target.write(chars, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null)
+                target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// rewrites a resolved tree for the tree-walker: a few shapes that come up
+// all the time become one node each, so evaluating them is one dispatch
+// and no boxed temporaries in between.
+//   x op 2     VariableConstant   (arithmetic and comparisons)
+//   x op y     VariableVariable
+//   i = i + 1  Increment          (also -, same variable both sides)
+// every fused node keeps the tree it replaced in original, for anything
+// other than the Interpreter that ends up looking at it. runs after the
+// Resolver, so what the Resolver filled in is copied across
+class NodeFuser implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> fuse(List<Stmt> statements) {
+        List<Stmt> fused = new ArrayList<>(statements.size());
+        for (Stmt statement : statements)
+            fused.add(fuse(statement));
+        return fused;
+    }
+
+    private Stmt fuse(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr fuse(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        Stmt.Block block = new Stmt.Block(fuse(stmt.statements));
+        block.locals = stmt.locals;
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(fuse(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(fuse(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = null;
+        if (stmt.initializer != null)
+            initializer = fuse(stmt.initializer);
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        var.global = stmt.global;
+        return var;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        if (expr.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr.value;
+            TokenType type = binary.operator.type;
+            if ((type == TokenType.PLUS || type == TokenType.MINUS)
+                    && binary.left instanceof Expr.Variable
+                    && isNumber(binary.right)
+                    && sameVariable(expr, (Expr.Variable) binary.left))
+                return fused(new Expr.Increment((Expr.Variable) binary.left, binary.operator,
+                        (double) ((Expr.Literal) binary.right).value, expr), expr);
+        }
+
+        Expr.Assign assign = new Expr.Assign(expr.name, fuse(expr.value));
+        assign.depth  = expr.depth;
+        assign.slot   = expr.slot;
+        assign.global = expr.global;
+        return fused(assign, expr);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        if (fusable(expr.operator.type) && expr.left instanceof Expr.Variable) {
+            Expr.Variable left = (Expr.Variable) expr.left;
+            if (isNumber(expr.right))
+                return fused(new Expr.VariableConstant(left, expr.operator,
+                        (double) ((Expr.Literal) expr.right).value, expr), expr);
+            if (expr.right instanceof Expr.Variable)
+                return fused(new Expr.VariableVariable(left, expr.operator,
+                        (Expr.Variable) expr.right, expr), expr);
+        }
+
+        return fused(new Expr.Binary(fuse(expr.left), expr.operator, fuse(expr.right)), expr);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return fused(new Expr.Grouping(fuse(expr.expression)), expr);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        return fused(new Expr.Unary(expr.operator, fuse(expr.right)), expr);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    // already fused, e.g. a tree that went through here once before
+    @Override
+    public Expr visitVariableConstantExpr(Expr.VariableConstant expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableVariableExpr(Expr.VariableVariable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+        return expr;
+    }
+
+    // == and != are left alone: they compare with isEqual, not as doubles
+    private static boolean fusable(TokenType type) {
+        switch (type) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+    }
+
+    // the Resolver sent both to the same place
+    private static boolean sameVariable(Expr.Assign assign, Expr.Variable variable) {
+        if (assign.depth != variable.depth)
+            return false;
+        if (assign.depth >= 0)
+            return assign.slot == variable.slot;
+        return assign.global == variable.global;
+    }
+
+    private static Expr fused(Expr expr, Expr from) {
+        expr.numeric = from.numeric;
+        return expr;
+    }
+}
@@ -0,0 +1,79 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+
+// numbers as stringify() has always written them, Double.toString()
+// without a trailing ".0", but without making a String on the way to
+// the output. each interpreter has its own, so it's never shared
+final class NumberFormatter {
+    // Double.toString() writes integral values smaller than this as plain
+    // digits and ".0". those are nearly all numbers a script prints, so
+    // their digits are worked out here
+    private static final double PLAIN = 1e7;
+
+    // the longest Double.toString() is 24 chars, -4.9406564584124654E-324
+    private final char[] chars = new char[32];
+    private final StringBuilder text = new StringBuilder(32);
+
+    // out.println(Interpreter.stringify(value))
+    void println(Object value, PrintWriter out) {
+        if (value instanceof Double) {
+            int start = format((double) value);
+            out.write(chars, start, chars.length - start);
+        } else {
+            out.print(Interpreter.stringify(value));
+        }
+        out.println();
+    }
+
+    // stringify() for a number
+    static String toString(double value) {
+        if (isPlain(value)) {
+            char[] chars = new char[8];
+            int start = integer(value, chars);
+            return new String(chars, start, chars.length - start);
+        }
+
+        String text = Double.toString(value);
+        if (text.endsWith(".0"))
+            text = text.substring(0, text.length() - 2);
+        return text;
+    }
+
+    // fills the end of chars. returns where it starts
+    private int format(double value) {
+        if (isPlain(value))
+            return integer(value, chars);
+
+        // anything else is Double.toString()'s. its digits aren't always
+        // the shortest that read back the same (1e23 is 9.999999999999999E22)
+        // so they can't be worked out any other way and still match. the
+        // JDK's StringBuilder.append(double) does the same conversion in a
+        // buffer of its own, without the String
+        text.setLength(0);
+        text.append(value);
+        int length = text.length();
+        if (length > 2 && text.charAt(length - 2) == '.' && text.charAt(length - 1) == '0')
+            length -= 2;
+        text.getChars(0, length, chars, chars.length - length);
+        return chars.length - length;
+    }
+
+    private static boolean isPlain(double value) {
+        return value == (int) value && Math.abs(value) < PLAIN;
+    }
+
+    // an integral value under PLAIN, right aligned in chars. -0 keeps its sign
+    private static int integer(double value, char[] chars) {
+        int i = chars.length;
+        int n = Math.abs((int) value);
+        do {
+            chars[--i] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+
+        if (Double.doubleToRawLongBits(value) < 0)
+            chars[--i] = '-';
+        return i;
+    }
+}
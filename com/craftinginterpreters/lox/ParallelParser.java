@@ -0,0 +1,103 @@
+package com.craftinginterpreters.lox;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// parses a big script a piece at a time across the fork/join common pool.
+// the tokens are cut after each ';' at brace depth zero, once a piece has
+// enough of them to be worth a task, and the pieces' statements are put
+// back together in order.
+// only a script with no errors is parsed this way. a brace count can't tell
+// a block from a stray '{' the parser skipped over, so once there's an
+// error the cuts can land mid-block. any error at all and the script is
+// parsed again by one Parser with the real reporter, so what gets reported
+// is exactly what the sequential parser reports
+class ParallelParser {
+
+    // tokens per piece, about. fewer and the tasks cost more than they save
+    static final int CHUNK = 8192;
+
+    // scan and parse source, reporting errors to reporter. the pieces are
+    // parsed on pool threads, at the Parser's default nesting limit. a piece
+    // that nests deeper counts as an error, and maxNesting only applies to
+    // the parse again on this thread
+    static List<Stmt> parse(String source, int maxNesting, ErrorReporter reporter) {
+        ErrorReporter quiet = new ErrorReporter(Writer.nullWriter());
+        List<Token> tokens = new Scanner(source, quiet).scanTokens();
+
+        List<Stmt> statements = null;
+        if (!quiet.hadError)
+            statements = parse(tokens);
+
+        // the Scanner reports as the Parser pulls tokens, so scan errors
+        // come out between parse errors. easiest to let it do that again
+        if (statements == null) {
+            Parser parser = new Parser(new Scanner(source, reporter), reporter);
+            parser.maxNesting = maxNesting;
+            statements = parser.parse();
+        }
+        return statements;
+    }
+
+    // the statements, or null if any piece didn't parse
+    static List<Stmt> parse(List<Token> tokens) {
+        List<int[]> chunks = split(tokens);
+        if (chunks.size() == 1)
+            return parse(tokens, 0, tokens.size());
+
+        List<List<Stmt>> parsed = chunks.parallelStream()
+                                        .map(chunk -> parse(tokens, chunk[0], chunk[1]))
+                                        .collect(Collectors.toList());
+
+        List<Stmt> statements = new ArrayList<>();
+        for (List<Stmt> chunk : parsed) {
+            if (chunk == null)
+                return null;
+            statements.addAll(chunk);
+        }
+        return statements;
+    }
+
+    // [from, to) ranges of tokens. the last one takes the EOF
+    private static List<int[]> split(List<Token> tokens) {
+        List<int[]> chunks = new ArrayList<>();
+        int from = 0;
+        int depth = 0;
+
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            switch (tokens.get(i).type) {
+                case LEFT_BRACE:
+                    depth++;
+                    break;
+                case RIGHT_BRACE:
+                    if (depth > 0)
+                        depth--;
+                    break;
+                case SEMICOLON:
+                    if (depth == 0 && i + 1 - from >= CHUNK) {
+                        chunks.add(new int[] { from, i + 1 });
+                        from = i + 1;
+                    }
+                    break;
+            }
+        }
+
+        chunks.add(new int[] { from, tokens.size() });
+        return chunks;
+    }
+
+    // one piece, with an EOF of its own after it unless it already ends in one
+    private static List<Stmt> parse(List<Token> tokens, int from, int to) {
+        Token end = new Token(EOF, "", null, tokens.get(to - 1).line);
+        int[] next = { from };
+
+        ErrorReporter quiet = new ErrorReporter(Writer.nullWriter());
+        Parser parser = new Parser(() -> next[0] < to ? tokens.get(next[0]++) : end, quiet);
+        List<Stmt> statements = parser.parse();
+        return quiet.hadError ? null : statements;
+    }
+}
@@ -1,7 +1,9 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 import static com.craftinginterpreters.lox.TokenType.*;
 import static com.craftinginterpreters.lox.Expr.*;
 
@@ -9,11 +11,40 @@ class Parser {
 
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
-    private int current = 0;
+    // only ever need one token of lookahead and one behind, so tokens can
+    // come straight from a Scanner as they're needed
+    private final ErrorReporter reporter;
+    private final Supplier<Token> tokens;
+    private Token current;
+    private Token previous;
+
+    // how deep blocks and expressions can nest. the Parser keeps its own
+    // stacks, but folding, resolving and running the tree still recurse
+    // once per level, so past this it's an error rather than a
+    // StackOverflowError later on. the default suits a thread with a
+    // default sized stack; whoever runs on a bigger one can raise it
+    static final int MAX_NESTING = 1000;
+    int maxNesting = MAX_NESTING;
+    private int blocks = 0; // blocks we're inside of
+
+    // assignment()'s stacks, kept for the next expression
+    private Expr[] lefts      = new Expr[16];
+    private int[] heights     = new int[16]; // how tall each left is
+    private Token[] operators = new Token[16];
+    private int[] precedences = new int[16];
+
+    Parser(List<Token> tokens, ErrorReporter reporter) {
+        this(tokens.iterator()::next, reporter);
+    }
+
+    Parser(Scanner scanner, ErrorReporter reporter) {
+        this(scanner::nextToken, reporter);
+    }
 
-    Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    Parser(Supplier<Token> tokens, ErrorReporter reporter) {
+        this.reporter = reporter;
+        this.tokens  = tokens;
+        this.current = tokens.get();
     }
 
     List<Stmt> parse() {
@@ -25,6 +56,28 @@ class Parser {
         return statements;
     }
 
+    // parse() one declaration at a time, for IncrementalParser
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    Stmt next() {
+        return declaration();
+    }
+
+    // a lone expression, no semicolon, nothing after it. wrapped up as an
+    // expression statement, or null if it didn't parse
+    Stmt parseExpression() {
+        try {
+            Expr expr = expression();
+            if (!isAtEnd())
+                throw error(peek(), "Expect end of expression.");
+            return new Stmt.Expression(expr);
+        } catch (ParseError error) {
+            return null;
+        }
+    }
+
     private Expr expression() {
         return assignment();
     }
@@ -76,110 +129,210 @@ class Parser {
     }
 
     private List<Stmt> block() {
-        List<Stmt> statements = new ArrayList<>();
-        
-        while (!check(RIGHT_BRACE) && !isAtEnd()) {
-            statements.add(declaration());
-        }
-
-        consume(RIGHT_BRACE, "Expect '}' after block");
-        return statements;
-    }
-
-    private Expr assignment() {
-        Expr expr = equality();
-
-        if (match(EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
+        nest(++blocks, previous());
+        try {
+            List<Stmt> statements = new ArrayList<>();
 
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
+            while (!check(RIGHT_BRACE) && !isAtEnd()) {
+                statements.add(declaration());
             }
 
-            error(equals, "Invalid assignment target.");
+            consume(RIGHT_BRACE, "Expect '}' after block");
+            return statements;
+        } finally {
+            blocks--;
         }
-
-        return expr;
     }
 
-    // equality -> comparison (("!=" | "==") comparison)*;
-    private Expr equality() {
-        Expr expr = comparison(); // first thing to compare
-
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) { // some number of other
-            Token operator = previous();         // things to compare
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    // token starts something nested this deep, counting the blocks around it
+    private void nest(int depth, Token token) {
+        if (depth > maxNesting)
+            throw error(token, "Too deeply nested.");
     }
 
-    // comparison -> addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
-    private Expr comparison() {
-        Expr expr = addition();
+    // precedence climbing, with the operators still waiting for their right
+    // operand on a stack instead of the call stack, so parsing never runs
+    // out of stack however deep an expression nests. builds the same trees as the grammar
+    //   assignment -> IDENTIFIER "=" assignment | equality ;
+    //   equality   -> comparison ( ( "!=" | "==" ) comparison )* ;
+    //   comparison -> addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
+    //   addition   -> multiplication ( ( "-" | "+" ) multiplication )* ;
+    //   multiplication -> unary ( ( "/" | "*" ) unary )* ;
+    //   unary      -> ( "!" | "-" ) unary | primary ;
+    //   primary    -> NUMBER | STRING | "false" | "true" | "nil"
+    //               | IDENTIFIER | "(" expression ")" ;
+    // and reports the same errors in the same order as walking it with
+    // one method per rule would
+    private Expr assignment() {
+        // the innermost waiting operator, with its left operand, is kept in
+        // locals. only the ones under it go in the arrays, so a run of
+        // operators at the same level like a + b - c never touches them
+        Expr left = null;
+        int leftHeight = 0;
+        Token operator = null;
+        int precedence = EMPTY;
+
+        Expr[] lefts      = this.lefts;
+        int[] heights     = this.heights;
+        Token[] operators = this.operators;
+        int[] precedences = this.precedences;
+        int depth = 0;
+
+        while (true) {
+            // prefix operators and open parens wait for what follows them
+            while (true) {
+                TokenType type = peek().type;
+                int prefix;
+                if (type == BANG || type == MINUS)
+                    prefix = UNARY;
+                else if (type == LEFT_PAREN)
+                    prefix = GROUPING;
+                else
+                    break;
+
+                if (precedence != EMPTY) {
+                    if (depth == precedences.length) {
+                        grow();
+                        lefts       = this.lefts;
+                        heights     = this.heights;
+                        operators   = this.operators;
+                        precedences = this.precedences;
+                    }
+                    lefts[depth]       = left;
+                    heights[depth]     = leftHeight;
+                    operators[depth]   = operator;
+                    precedences[depth] = precedence;
+                    depth++;
+                }
+                left       = null;
+                leftHeight = 0;
+                operator   = take();
+                precedence = prefix;
+            }
+
+            Expr operand = primary();
+            int height = 0; // levels in operand above its leaves
+
+            // apply waiting operators that bind at least as tight as the next
+            // one, innermost first. left associative, so equal precedence goes
+            // first, but '=' is right associative and only waits on tighter
+            // ones. at the end of an expression or grouping that's everything
+            // back to the open paren
+            int next;
+            while (true) {
+                next = PRECEDENCES[peek().type.ordinal()];
+                int tightest = next == NONE       ? ASSIGNMENT
+                             : next == ASSIGNMENT ? ASSIGNMENT + 1
+                             : next;
+
+                if (precedence >= tightest) {
+                    height = 1 + Math.max(leftHeight, height);
+                    nest(blocks + height, operator);
+                    operand = apply(left, operator, precedence, operand);
+                    precedence = EMPTY;
+                } else if (precedence == EMPTY && depth > 0 && precedences[depth - 1] >= tightest) {
+                    depth--;
+                    height = 1 + Math.max(heights[depth], height);
+                    nest(blocks + height, operators[depth]);
+                    operand = apply(lefts[depth], operators[depth], precedences[depth], operand);
+                } else if (next != NONE) {
+                    break;
+                } else {
+                    // the end. of a grouping if there's an open paren left
+                    if (precedence == GROUPING)
+                        precedence = EMPTY;
+                    else if (precedence == EMPTY && depth > 0)
+                        depth--;
+                    else
+                        return operand;
+                    Token paren = consume(RIGHT_PAREN, "Expect ')' after expression.");
+                    nest(blocks + ++height, paren);
+                    operand = new Expr.Grouping(operand);
+                }
+            }
 
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = addition();
-            expr = new Expr.Binary(expr, operator, right);
+            // the infix operator is the innermost one waiting now
+            if (precedence != EMPTY) {
+                if (depth == precedences.length) {
+                    grow();
+                    lefts       = this.lefts;
+                    heights     = this.heights;
+                    operators   = this.operators;
+                    precedences = this.precedences;
+                }
+                lefts[depth]       = left;
+                heights[depth]     = leftHeight;
+                operators[depth]   = operator;
+                precedences[depth] = precedence;
+                depth++;
+            }
+            left       = operand;
+            leftHeight = height;
+            operator   = take();
+            precedence = next;
         }
-        return expr;
     }
 
-    // ((a times/div b)*) +/- ((c times/div d)*)
-    private Expr addition() {
-        Expr expr = multiplication(); // left side
+    // operator applied to its operands. left is null for a unary one
+    private Expr apply(Expr left, Token operator, int precedence, Expr right) {
+        if (precedence == UNARY)
+            return new Expr.Unary(operator, right);
+        if (precedence != ASSIGNMENT)
+            return new Expr.Binary(left, operator, right);
 
-        while (match(MINUS, PLUS)) {
-            Token operator = previous(); // plus or minus
-            Expr right = multiplication(); // right side
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+        if (left instanceof Expr.Variable)
+            return new Expr.Assign(((Expr.Variable) left).name, right);
+        error(operator, "Invalid assignment target.");
+        return left;
     }
 
-    // (!a or -a) times/div (!b or -b)
-    private Expr multiplication() {
-        Expr expr = unary();
-
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private void grow() {
+        int size = precedences.length * 2;
+        lefts       = Arrays.copyOf(lefts, size);
+        heights     = Arrays.copyOf(heights, size);
+        operators   = Arrays.copyOf(operators, size);
+        precedences = Arrays.copyOf(precedences, size);
     }
 
-    // !a or -a
-    private Expr unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous(); // bang or minus
-            Expr right = unary(); // value
-            return new Expr.Unary(operator, right);
-        }
-        return primary();
+    // precedences, lowest first. GROUPING is an open paren on the stack
+    private static final int GROUPING   = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int EQUALITY   = 2;
+    private static final int COMPARISON = 3;
+    private static final int TERM       = 4;
+    private static final int FACTOR     = 5;
+    private static final int UNARY      = 6;
+    private static final int NONE       = -1; // not an infix operator
+    private static final int EMPTY      = -1; // no operator waiting
+
+    // infix precedence by TokenType ordinal, NONE for everything else
+    private static final int[] PRECEDENCES = new int[TokenType.values().length];
+    static {
+        Arrays.fill(PRECEDENCES, NONE);
+        PRECEDENCES[EQUAL.ordinal()]         = ASSIGNMENT;
+        PRECEDENCES[BANG_EQUAL.ordinal()]    = EQUALITY;
+        PRECEDENCES[EQUAL_EQUAL.ordinal()]   = EQUALITY;
+        PRECEDENCES[GREATER.ordinal()]       = COMPARISON;
+        PRECEDENCES[GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCES[LESS.ordinal()]          = COMPARISON;
+        PRECEDENCES[LESS_EQUAL.ordinal()]    = COMPARISON;
+        PRECEDENCES[MINUS.ordinal()]         = TERM;
+        PRECEDENCES[PLUS.ordinal()]          = TERM;
+        PRECEDENCES[SLASH.ordinal()]         = FACTOR;
+        PRECEDENCES[STAR.ordinal()]          = FACTOR;
     }
 
-    // primary -> NUMBER | STRING | "false" | "true" | "nil" | "(" expression ")" ;
+    // primary -> NUMBER | STRING | "false" | "true" | "nil" | IDENTIFIER ;
+    // parens are assignment()'s
     private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
-
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
-
-        if (match(IDENTIFIER))
-            return new Expr.Variable(previous());
-
-        if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
+        TokenType type = peek().type;
+        if (type == NUMBER || type == STRING)
+            return new Expr.Literal(take().literal);
+        if (type == IDENTIFIER)
+            return new Expr.Variable(take());
+        if (type == FALSE) { take(); return new Expr.Literal(false); }
+        if (type == TRUE)  { take(); return new Expr.Literal(true); }
+        if (type == NIL)   { take(); return new Expr.Literal(null); }
 
         throw error(peek(), "Expect expression.");
     }
@@ -211,26 +364,36 @@ class Parser {
     }
 
     private Token advance() {
-        if (!isAtEnd())
-            current++;
+        if (!isAtEnd()) {
+            previous = current;
+            current  = tokens.get();
+        }
         return previous();
     }
 
+    // advance() for a token that's been checked and isn't EOF. small
+    // enough for the JIT to inline where the operators are
+    private Token take() {
+        previous = current;
+        current  = tokens.get();
+        return previous;
+    }
+
     private boolean isAtEnd() {
         return peek().type == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     // create a parse error
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
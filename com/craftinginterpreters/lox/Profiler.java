@@ -0,0 +1,145 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// counts and times every Stmt and Expr the Interpreter runs, by node type
+// and by source line, plus how variables get looked up and how many
+// Doubles get boxed. only exists when asked for (--profile); without one
+// the Interpreter's hooks are a single null check each.
+// numeric subtrees the Interpreter evaluates unboxed are counted as one
+// node, the one at the top
+class Profiler {
+    private static final int BAR = 40;
+
+    // one row of either table
+    private static class Entry {
+        long count;
+        long totalNanos; // including children
+        long selfNanos;
+    }
+
+    private final Map<Class<?>, Entry> byType = new HashMap<>();
+    private final Map<Integer, Entry> byLine = new TreeMap<>();
+    private final Map<Object, Integer> lines = new IdentityHashMap<>();
+
+    // time spent in the children of each node on the stack, and its line
+    private long[] childNanos = new long[64];
+    private int[] lineStack = new int[64];
+    private int depth = 0;
+
+    long localLookups = 0;
+    long hopsWalked = 0;   // enclosing links followed for those
+    long globalLookups = 0;
+    long cacheHits = 0;    // globals found through a node's inline cache
+    long cacheMisses = 0;
+    long boxedDoubles = 0;
+
+    long enter(Object node) {
+        if (depth == childNanos.length) {
+            childNanos = Arrays.copyOf(childNanos, depth * 2);
+            lineStack  = Arrays.copyOf(lineStack, depth * 2);
+        }
+        int line = lineOf(node);
+        if (line == 0 && depth > 0)
+            line = lineStack[depth - 1];
+        lineStack[depth] = line;
+        childNanos[depth++] = 0;
+        return System.nanoTime();
+    }
+
+    void exit(Object node, long start) {
+        long elapsed = System.nanoTime() - start;
+        long self = elapsed - childNanos[--depth];
+        if (depth > 0)
+            childNanos[depth - 1] += elapsed;
+
+        record(byType.computeIfAbsent(node.getClass(), type -> new Entry()), elapsed, self);
+        record(byLine.computeIfAbsent(lineStack[depth], line -> new Entry()), elapsed, self);
+    }
+
+    private static void record(Entry entry, long elapsed, long self) {
+        entry.count++;
+        entry.totalNanos += elapsed;
+        entry.selfNanos  += self;
+    }
+
+    // nodes like Literal and Print don't hold a token, so use the first
+    // line found anywhere below them. 0 if there's none at all, and then
+    // enter() charges it to whatever it's inside of
+    private int lineOf(Object node) {
+        Integer line = lines.get(node);
+        if (line == null) {
+            line = firstLine(node);
+            lines.put(node, line);
+        }
+        return line;
+    }
+
+    private static int firstLine(Object node) {
+        if (node instanceof Expr.Assign)   return ((Expr.Assign) node).name.line;
+        if (node instanceof Expr.Variable) return ((Expr.Variable) node).name.line;
+        if (node instanceof Expr.Unary)    return ((Expr.Unary) node).operator.line;
+        if (node instanceof Expr.VariableConstant) return ((Expr.VariableConstant) node).variable.name.line;
+        if (node instanceof Expr.VariableVariable) return ((Expr.VariableVariable) node).left.name.line;
+        if (node instanceof Expr.Increment)        return ((Expr.Increment) node).variable.name.line;
+        if (node instanceof Stmt.Var)      return ((Stmt.Var) node).name.line;
+        if (node instanceof Expr.Binary) {
+            int left = firstLine(((Expr.Binary) node).left);
+            return left != 0 ? left : ((Expr.Binary) node).operator.line;
+        }
+        if (node instanceof Expr.Grouping)   return firstLine(((Expr.Grouping) node).expression);
+        if (node instanceof Stmt.Expression) return firstLine(((Stmt.Expression) node).expression);
+        if (node instanceof Stmt.Print)      return firstLine(((Stmt.Print) node).expression);
+        if (node instanceof Stmt.Block) {
+            for (Stmt statement : ((Stmt.Block) node).statements) {
+                int line = firstLine(statement);
+                if (line != 0)
+                    return line;
+            }
+        }
+        return 0;
+    }
+
+    void dump(PrintStream out) {
+        out.println("== flat profile ==");
+        out.printf("%-22s %12s %12s %12s%n", "node", "count", "total ms", "self ms");
+        List<Map.Entry<Class<?>, Entry>> types = new ArrayList<>(byType.entrySet());
+        types.sort((a, b) -> Long.compare(b.getValue().selfNanos, a.getValue().selfNanos));
+        for (Map.Entry<Class<?>, Entry> type : types) {
+            Entry entry = type.getValue();
+            String name = type.getKey().getName();
+            name = name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+            out.printf("%-22s %12d %12.3f %12.3f%n", name, entry.count,
+                    entry.totalNanos / 1e6, entry.selfNanos / 1e6);
+        }
+
+        out.println();
+        out.printf("variable lookups: %d local (%d hops, %.2f per lookup), %d global%n",
+                localLookups, hopsWalked,
+                localLookups == 0 ? 0.0 : (double) hopsWalked / localLookups,
+                globalLookups);
+        long cached = cacheHits + cacheMisses;
+        out.printf("global inline cache: %d hits, %d misses (%.1f%% hit rate)%n",
+                cacheHits, cacheMisses, cached == 0 ? 0.0 : 100.0 * cacheHits / cached);
+        out.printf("boxed doubles: %d%n", boxedDoubles);
+
+        out.println();
+        out.println("== line heat map (self time) ==");
+        long hottest = 1;
+        for (Entry entry : byLine.values())
+            hottest = Math.max(hottest, entry.selfNanos);
+        for (Map.Entry<Integer, Entry> line : byLine.entrySet()) {
+            Entry entry = line.getValue();
+            int width = (int) (BAR * entry.selfNanos / hottest);
+            out.printf("%6d %12d %10.3f ms |%s%n", line.getKey(), entry.count,
+                    entry.selfNanos / 1e6, "#".repeat(width));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// static pass between the Parser and the Interpreter. Gives every local
+// variable a (depth, slot) pair so the Interpreter can index straight into
+// an Environment's array instead of hashing names. Anything not found in a
+// local scope is left with depth -1 and gets its SymbolTable number instead,
+// which the Interpreter indexes its globals with.
+// also marks expressions that always evaluate to a number, which the
+// Interpreter then works out in unboxed doubles
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private final ErrorReporter reporter;
+    private final SymbolTable symbols;
+
+    // innermost scope is last, each name mapped to its slot. empty means
+    // we're at the top level
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+
+    Resolver(ErrorReporter reporter, SymbolTable symbols) {
+        this.reporter = reporter;
+        this.symbols = symbols;
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements)
+            resolve(statement);
+    }
+
+    private void resolve(Stmt stmt) {
+        if (stmt != null) // the parser leaves nulls behind after an error
+            stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        resolve(stmt.statements);
+        stmt.locals = scopes.get(scopes.size() - 1).size();
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // the initializer first: in var a = a + 1; the a it reads is the
+        // one from outside, the same as when a block's names were looked
+        // up as it ran
+        if (stmt.initializer != null)
+            resolve(stmt.initializer);
+
+        if (scopes.isEmpty())
+            stmt.global = symbols.intern(stmt.name.lexeme());
+        else
+            stmt.slot = declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(expr.name.lexeme());
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot  = slot;
+                return null;
+            }
+        }
+        // not found, must be a global
+        expr.global = symbols.intern(expr.name.lexeme());
+        return null;
+    }
+
+    // NodeFuser runs after this, so these only come back around through
+    // original
+    @Override
+    public Void visitVariableConstantExpr(Expr.VariableConstant expr) {
+        resolve(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableVariableExpr(Expr.VariableVariable expr) {
+        resolve(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitIncrementExpr(Expr.Increment expr) {
+        resolve(expr.original);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(expr.name.lexeme());
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot  = slot;
+                return null;
+            }
+        }
+        expr.global = symbols.intern(expr.name.lexeme());
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+
+        // - * / either produce a number or throw. + only when it can't
+        // be a string concatenation
+        switch (expr.operator.type) {
+            case MINUS:
+            case STAR:
+            case SLASH:
+                expr.numeric = true;
+                break;
+            case PLUS:
+                expr.numeric = expr.left.numeric && expr.right.numeric;
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        expr.numeric = expr.expression.numeric;
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        expr.numeric = expr.value instanceof Double;
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        expr.numeric = expr.operator.type == TokenType.MINUS;
+        return null;
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<String, Integer>());
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    // the slot for name in the innermost scope, the next free one unless
+    // it's declared there already. declaring it again just sets it again
+    private int declare(Token name) {
+        Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+        Integer slot = scope.get(name.lexeme());
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(name.lexeme(), slot);
+        }
+        return slot;
+    }
+}
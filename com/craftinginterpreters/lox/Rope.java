@@ -0,0 +1,90 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+// a string built with +. concatenating makes a node over the two halves
+// instead of copying them, so building a long string a piece at a time
+// is linear, not quadratic. the chars are only put together once
+// something looks at the whole string (stringify(), printing, isEqual),
+// and then kept.
+// a Lox string is any CharSequence at runtime: a String for literals and
+// short results, a Rope otherwise. ropes are made and read by one
+// interpreter, so this isn't safe to share between threads
+final class Rope implements CharSequence {
+    // up to this long it's cheaper to copy than to keep a node
+    private static final int SHORT = 64;
+
+    private CharSequence left;
+    private CharSequence right;
+    private String flat; // once flattened, and then left and right are let go
+    private final int length;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    // left + right, for two Lox strings
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < 0)
+            throw new OutOfMemoryError("string too long");
+
+        // both Strings: a Rope is never SHORT
+        if (length <= SHORT)
+            return left.toString().concat(right.toString());
+        if (left.length() == 0)
+            return right;
+        if (right.length() == 0)
+            return left;
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // the pieces are copied in from the right end, with a stack rather than
+    // recursion. appending leans the tree to the left, so that way only a
+    // node or two is ever waiting however many appends went into it
+    @Override
+    public String toString() {
+        if (flat != null)
+            return flat;
+
+        char[] chars = new char[length];
+        int end = length;
+
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope && ((Rope) piece).flat == null) {
+                Rope rope = (Rope) piece;
+                pending.push(rope.left);
+                pending.push(rope.right);
+            } else {
+                String text = piece.toString();
+                end -= text.length();
+                text.getChars(0, text.length(), chars, end);
+            }
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+}
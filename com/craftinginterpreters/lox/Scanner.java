@@ -2,20 +2,46 @@ package com.craftinginterpreters.lox;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+// works on a window of characters. scanning a String puts the whole thing
+// in the window up front; scanning a Reader keeps only the current lexeme
+// plus a block of read-ahead, so a huge file never has to be in memory
 class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();    
+    private static final int BLOCK = 8192;
+
+    private final ErrorReporter reporter;
+    private final Reader reader; // null once everything is in the buffer
+    private char[] buffer;
+    private int limit;           // end of the valid chars in buffer
+
+    private Token token;         // set by addToken, handed out by nextToken
+    private boolean done = false;
+
+    // one String per distinct identifier, looked up by its chars, so
+    // seeing the same name again doesn't copy it out of the buffer again
+    private String[] identifiers = new String[256];
+    private int identifierCount = 0;
+
     private int start   = 0;
     private int current = 0;
     private int line    = 1;
 
-    // define reserved words
-    private static final Map<String, TokenType> keywords;
+    // where the last token handed out began, and on which line. offsets
+    // only mean something when the whole source is in the buffer
+    int tokenStart = 0;
+    int tokenLine  = 1;
+
+    // define reserved words. identifier() matches them with keywordType(),
+    // this is just the list, and where the keyword lexemes come from
+    static final Map<String, TokenType> keywords;
     static {
         keywords = new HashMap<>();
         keywords.put("and",    AND);
@@ -36,21 +62,118 @@ class Scanner {
         keywords.put("while",  WHILE);
     }
 
-    Scanner(String source) {
-        this.source = source;
+    // tokens whose text is always the same share one lexeme string
+    private static final String[] lexemes = new String[TokenType.values().length];
+    static {
+        String[][] fixed = {
+            {"LEFT_PAREN", "("}, {"RIGHT_PAREN", ")"},
+            {"LEFT_BRACE", "{"}, {"RIGHT_BRACE", "}"},
+            {"COMMA", ","}, {"DOT", "."}, {"MINUS", "-"}, {"PLUS", "+"},
+            {"SEMICOLON", ";"}, {"SLASH", "/"}, {"STAR", "*"},
+            {"BANG", "!"}, {"BANG_EQUAL", "!="},
+            {"EQUAL", "="}, {"EQUAL_EQUAL", "=="},
+            {"GREATER", ">"}, {"GREATER_EQUAL", ">="},
+            {"LESS", "<"}, {"LESS_EQUAL", "<="},
+        };
+        for (String[] pair : fixed)
+            lexemes[TokenType.valueOf(pair[0]).ordinal()] = pair[1];
+        for (Map.Entry<String, TokenType> keyword : keywords.entrySet())
+            lexemes[keyword.getValue().ordinal()] = keyword.getKey();
+    }
+
+    Scanner(String source, ErrorReporter reporter) {
+        this.reporter = reporter;
+        this.reader = null;
+        this.buffer = source.toCharArray();
+        this.limit  = buffer.length;
+    }
+
+    // carry on scanning source from offset, which is on the given line.
+    // the array is used as it is, not copied
+    Scanner(char[] source, int offset, int line, ErrorReporter reporter) {
+        this.reporter = reporter;
+        this.reader = null;
+        this.buffer = source;
+        this.limit  = source.length;
+        this.current = offset;
+        this.line    = line;
+    }
+
+    Scanner(Reader reader, ErrorReporter reporter) {
+        this.reporter = reporter;
+        this.reader = reader;
+        this.buffer = new char[BLOCK];
+        this.limit  = 0;
     }
 
     List<Token> scanTokens() {
-        while (!isAtEnd()) { // beginning of next lexeme
-            start = current;
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+        return tokens;
+    }
+
+    // scan just far enough to produce one more token. EOF forever after
+    // the input runs out
+    Token nextToken() {
+        while (!done) {
+            if (isAtEnd()) {
+                done = true;
+                break;
+            }
+            start = current; // beginning of next lexeme
+            int startLine = line;
             scanToken();
+
+            if (token != null) {
+                tokenStart = start;
+                tokenLine  = startLine;
+                Token next = token;
+                token = null;
+                return next;
+            }
         }
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        tokenStart = current;
+        tokenLine  = line;
+        return new Token(EOF, "", null, line);
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !available(0);
+    }
+
+    // make sure the char 'ahead' places past current is in the buffer,
+    // reading more if there's a reader. false if the input ends first
+    private boolean available(int ahead) {
+        if (current + ahead < limit)
+            return true;
+        if (reader == null)
+            return false;
+
+        try {
+            while (current + ahead >= limit) {
+                // drop everything before this lexeme, grow if that's not enough
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit   -= start;
+                    current -= start;
+                    start    = 0;
+                }
+                if (limit == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0)
+                    return false;
+                limit += read;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private void scanToken() {
@@ -97,19 +220,13 @@ class Scanner {
             string();
             break;
 
-        // "or"
-        case 'o':
-            if (peek() == 'r')
-                addToken(OR);
-            break;
-
         default:
             if (isDigit(c))
                 number();
             else if (isAlpha(c))
                 identifier();
             else
-                Lox.error(line, "Unexpected character: " + c);
+                reporter.error(line, "Unexpected character: " + c);
             break;
         }
     }
@@ -119,12 +236,105 @@ class Scanner {
             advance();
 
         // token a keyword?
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null)
-            type = IDENTIFIER; // if not, it's an identifier
+        TokenType type = keywordType(buffer, start, current - start);
+        if (type == IDENTIFIER) // if not, it's an identifier
+            addToken(type, intern(start, current - start), null);
+        else
+            addToken(type);
+    }
 
-        addToken(type);
+    // which keyword, if any, chars[start, start + length) spells. a trie
+    // written out as switches on the first (and sometimes second) letter,
+    // so it never has to make a String or hash anything
+    static TokenType keywordType(char[] chars, int start, int length) {
+        switch (chars[start]) {
+        case 'a': return checkKeyword(chars, start, length, 1, "nd", AND);
+        case 'c': return checkKeyword(chars, start, length, 1, "lass", CLASS);
+        case 'e': return checkKeyword(chars, start, length, 1, "lse", ELSE);
+        case 'f':
+            if (length > 1) {
+                switch (chars[start + 1]) {
+                case 'a': return checkKeyword(chars, start, length, 2, "lse", FALSE);
+                case 'o': return checkKeyword(chars, start, length, 2, "r", FOR);
+                case 'u': return checkKeyword(chars, start, length, 2, "n", FUN);
+                }
+            }
+            break;
+        case 'i': return checkKeyword(chars, start, length, 1, "f", IF);
+        case 'n': return checkKeyword(chars, start, length, 1, "il", NIL);
+        case 'o': return checkKeyword(chars, start, length, 1, "r", OR);
+        case 'p': return checkKeyword(chars, start, length, 1, "rint", PRINT);
+        case 'r': return checkKeyword(chars, start, length, 1, "eturn", RETURN);
+        case 's': return checkKeyword(chars, start, length, 1, "uper", SUPER);
+        case 't':
+            if (length > 1) {
+                switch (chars[start + 1]) {
+                case 'h': return checkKeyword(chars, start, length, 2, "is", THIS);
+                case 'r': return checkKeyword(chars, start, length, 2, "ue", TRUE);
+                }
+            }
+            break;
+        case 'v': return checkKeyword(chars, start, length, 1, "ar", VAR);
+        case 'w': return checkKeyword(chars, start, length, 1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    // does the rest of the word, after the 'prefix' chars the trie already
+    // matched, equal 'rest'
+    private static TokenType checkKeyword(char[] chars, int start, int length,
+                                          int prefix, String rest, TokenType type) {
+        if (length != prefix + rest.length())
+            return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++)
+            if (chars[start + prefix + i] != rest.charAt(i))
+                return IDENTIFIER;
+        return type;
+    }
+
+    // the String for buffer[offset, offset + length), reusing the one from
+    // last time this identifier came up
+    private String intern(int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + buffer[i];
+
+        int mask = identifiers.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String candidate = identifiers[i];
+            if (candidate == null) {
+                String text = new String(buffer, offset, length);
+                identifiers[i] = text;
+                if (++identifierCount * 2 > identifiers.length)
+                    growIdentifiers();
+                return text;
+            }
+            if (candidate.hashCode() == hash && sameChars(candidate, offset, length))
+                return candidate;
+        }
+    }
+
+    private boolean sameChars(String text, int offset, int length) {
+        if (text.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (text.charAt(i) != buffer[offset + i])
+                return false;
+        return true;
+    }
+
+    private void growIdentifiers() {
+        String[] old = identifiers;
+        identifiers = new String[old.length * 2];
+        int mask = identifiers.length - 1;
+        for (String text : old) {
+            if (text == null)
+                continue;
+            int i = text.hashCode() & mask;
+            while (identifiers[i] != null)
+                i = (i + 1) & mask;
+            identifiers[i] = text;
+        }
     }
 
     // read in a number
@@ -140,9 +350,78 @@ class Scanner {
                 advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        // the text is only needed if there's an error at this token. when
+        // it's how the value prints anyway, Token makes it from the value
+        // then, and nothing is copied out of the buffer here
+        int length = current - start;
+        double value = numberValue(buffer, start, length);
+        String text = null;
+        if (!printsAs(value, buffer, start, length))
+            text = new String(buffer, start, length);
+        addToken(NUMBER, text, value);
+    }
+
+    // whether stringify() writes value as exactly the literal's chars.
+    // integers under 10^7 print as their digits, and other numbers from
+    // 10^-3 up print as Double.toString()'s shortest digits, which are the
+    // literal's own when it has at most 15 and no zeros to trim at either end
+    static boolean printsAs(double value, char[] chars, int start, int length) {
+        if (chars[start] == '0' && length > 1 && chars[start + 1] != '.')
+            return false;
+
+        int point = start;
+        while (point < start + length && chars[point] != '.')
+            point++;
+        if (point - start > 7)
+            return false;
+        if (point == start + length)
+            return true;
+
+        return length <= 16 && chars[start + length - 1] != '0' && value >= 1e-3;
+    }
+
+    // the value of the number literal chars[start, start + length), digits
+    // with maybe a '.' and more digits. always the double parseDouble()
+    // would give, worked out from the chars: integers convert straight from
+    // a long, and decimals whose digits fit 53 bits with at most 22 after
+    // the point are one division by an exact power of ten (Clinger's fast
+    // path), so they round correctly too. longer ones than that are rare
+    // enough to leave to parseDouble()
+    static double numberValue(char[] chars, int start, int length) {
+        long digits = 0;
+        int significant = 0; // digits so far, not counting leading zeros
+        int fraction = 0;    // digits after the '.'
+        boolean point = false;
+
+        for (int i = start; i < start + length; i++) {
+            char c = chars[i];
+            if (c == '.') {
+                point = true;
+                continue;
+            }
+            if (significant == 18) // one more might not fit a long
+                return Double.parseDouble(new String(chars, start, length));
+
+            digits = digits * 10 + (c - '0');
+            if (digits != 0)
+                significant++;
+            if (point)
+                fraction++;
+        }
+
+        if (fraction == 0)
+            return digits; // exact up to 2^53, rounded to nearest past it
+        if (digits <= 1L << 53 && fraction < POWERS_OF_TEN.length)
+            return digits / POWERS_OF_TEN[fraction];
+        return Double.parseDouble(new String(chars, start, length));
     }
 
+    // every power of ten a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     // read in a string
     private void string() {
         // read in chars
@@ -154,36 +433,36 @@ class Scanner {
 
         // not terminated
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         advance(); // the closing "
         
         // trim surrounding quotes
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        String value = new String(buffer, start + 1, current - start - 2);
+        addToken(STRING, new String(buffer, start, current - start), value);
     }
 
     private char advance() {
         current++;
-        return source.charAt(current - 1);
+        return buffer[current - 1];
     }
 
+    // punctuation, operators and keywords. no need to copy the text
     private void addToken(TokenType type) {
-        addToken(type, null);
+        addToken(type, lexemes[type.ordinal()], null);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(TokenType type, String text, Object literal) {
+        token = new Token(type, text, literal, line);
     }
 
     private boolean match(char expected) {
         if (isAtEnd())
             return false;
 
-        if (source.charAt(current) != expected)
+        if (buffer[current] != expected)
             return false;
 
         current++;
@@ -195,14 +474,14 @@ class Scanner {
         if (isAtEnd())
             return '\0';
 
-        return source.charAt(current);
+        return buffer[current];
     }
 
     // look ahead two
     private char peekNext() {
-        if (current + 1 >= source.length())
+        if (!available(1))
             return '\0';
-        return source.charAt(current + 1);
+        return buffer[current + 1];
     }
 
     private boolean isAlpha(char c) {
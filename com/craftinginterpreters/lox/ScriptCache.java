@@ -0,0 +1,508 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// on-disk cache of folded and resolved programs, so running the same file
+// again can skip the Scanner, Parser, ConstantFolder and Resolver. entries
+// are named after a hash of the source, which means an edited file simply
+// misses and gets a new entry. anything going wrong with the cache is
+// treated as a miss; it never stops a script from running
+class ScriptCache {
+    // bump whenever the tree or anything the Resolver records changes shape
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final String SUFFIX = ".loxc";
+
+    private final Path directory;
+
+    ScriptCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // $XDG_CACHE_HOME/jlox, ~/.cache/jlox otherwise. -Djlox.cache.dir wins
+    static ScriptCache standard() {
+        String dir = System.getProperty("jlox.cache.dir");
+        if (dir != null)
+            return new ScriptCache(Paths.get(dir));
+
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isEmpty())
+            return new ScriptCache(Paths.get(xdg, "jlox"));
+
+        return new ScriptCache(Paths.get(System.getProperty("user.home"), ".cache", "jlox"));
+    }
+
+    // content hash of a source file, hex encoded. streamed, the file is
+    // never held in memory
+    static String hash(Path source) throws IOException {
+        MessageDigest digest = digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+            byte[] block = new byte[8192];
+            while (in.read(block) >= 0)
+                ;
+        }
+        return key(digest);
+    }
+
+    // what hash() uses. on a miss the caller feeds it the bytes as it
+    // parses them, so the entry is stored under exactly what was parsed
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    // the key for everything a digest() has been fed, hex encoded
+    static String key(MessageDigest digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    // the cached statements with their globals numbered in symbols, or
+    // null on a miss
+    List<Stmt> load(String key, SymbolTable symbols) {
+        Path path = directory.resolve(key + SUFFIX);
+        try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            return new Decoder(in, Files.size(path) - 8, symbols).statements();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable or from some other build, ignore it
+        } catch (StackOverflowError e) {
+            // the Decoder recurses once per level, and a damaged entry can
+            // claim to nest deeper than any script the Parser would take
+            return null;
+        }
+    }
+
+    void store(String key, List<Stmt> statements) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            // write somewhere else first so a reader never sees half a file
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                new Encoder(out).statements(statements);
+            }
+            Files.move(temp, directory.resolve(key + SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException | CacheException e) {
+            // couldn't cache it, run uncached next time too
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    void clear() throws IOException {
+        if (!Files.isDirectory(directory))
+            return;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*{" + SUFFIX + ",.tmp}")) {
+            for (Path entry : entries)
+                Files.deleteIfExists(entry);
+        }
+    }
+
+    // node tags. values only have to agree between Encoder and Decoder
+    private static final int BLOCK = 0, EXPRESSION = 1, PRINT = 2, VAR = 3;
+    private static final int ASSIGN = 0, BINARY = 1, GROUPING = 2,
+                             LITERAL = 3, UNARY = 4, VARIABLE = 5;
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4;
+
+    // writes the tree depth first. strings go in once and are referred to
+    // by index after that, so repeated names and operators cost an int
+    private static class Encoder implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void statements(List<Stmt> statements) throws IOException {
+            out.writeInt(statements.size());
+            for (Stmt statement : statements)
+                statement.accept(this);
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            write(BLOCK);
+            write(stmt.locals);
+            write(stmt.statements.size());
+            for (Stmt statement : stmt.statements)
+                statement.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            write(EXPRESSION);
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            write(PRINT);
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            write(VAR);
+            write(stmt.name);
+            write(stmt.slot);
+            write(stmt.initializer == null ? 0 : 1);
+            if (stmt.initializer != null)
+                stmt.initializer.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            write(ASSIGN, expr);
+            write(expr.name);
+            write(expr.depth);
+            write(expr.slot);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            write(BINARY, expr);
+            expr.left.accept(this);
+            write(expr.operator);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            write(GROUPING, expr);
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            write(LITERAL, expr);
+            writeValue(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            write(UNARY, expr);
+            write(expr.operator);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            write(VARIABLE, expr);
+            write(expr.name);
+            write(expr.depth);
+            write(expr.slot);
+            return null;
+        }
+
+        // trees are fused just before they run, so these never get here
+        @Override
+        public Void visitVariableConstantExpr(Expr.VariableConstant expr) {
+            return expr.original.accept(this);
+        }
+
+        @Override
+        public Void visitVariableVariableExpr(Expr.VariableVariable expr) {
+            return expr.original.accept(this);
+        }
+
+        @Override
+        public Void visitIncrementExpr(Expr.Increment expr) {
+            return expr.original.accept(this);
+        }
+
+        private void write(int tag, Expr expr) {
+            write(tag);
+            write(expr.numeric ? 1 : 0);
+        }
+
+        private void write(Token token) {
+            write(token.type.ordinal());
+            writeString(token.lexeme());
+            writeValue(token.literal);
+            write(token.line);
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                write(NIL);
+            } else if (value.equals(true)) {
+                write(TRUE);
+            } else if (value.equals(false)) {
+                write(FALSE);
+            } else if (value instanceof Double) {
+                write(NUMBER);
+                try {
+                    out.writeDouble((double) value);
+                } catch (IOException e) {
+                    throw new CacheException(e);
+                }
+            } else {
+                write(STRING);
+                writeString((String) value);
+            }
+        }
+
+        private void writeString(String text) {
+            Integer index = strings.get(text);
+            if (index != null) {
+                write(index + 1);
+                return;
+            }
+
+            strings.put(text, strings.size());
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            write(0);
+            write(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new CacheException(e);
+            }
+        }
+
+        // unsigned varint, most ints in a tree are small. -1 (global depth
+        // or slot) is shifted up by one so it stays a single byte
+        private void write(int value) {
+            int bits = value + 1;
+            try {
+                while ((bits & ~0x7f) != 0) {
+                    out.write((bits & 0x7f) | 0x80);
+                    bits >>>= 7;
+                }
+                out.write(bits);
+            } catch (IOException e) {
+                throw new CacheException(e);
+            }
+        }
+    }
+
+    // global numbers only mean something to the SymbolTable that handed
+    // them out, so they aren't written out. the Decoder interns the names
+    // again instead
+    private static class Decoder {
+        private final DataInputStream in;
+        private long left; // bytes of the entry not read yet
+        private final SymbolTable symbols;
+        private final List<String> strings = new ArrayList<>();
+        private static final TokenType[] types = TokenType.values();
+
+        Decoder(DataInputStream in, long left, SymbolTable symbols) {
+            this.in = in;
+            this.left = left;
+            this.symbols = symbols;
+        }
+
+        List<Stmt> statements() throws IOException {
+            take(4);
+            int count = in.readInt();
+            fits(count);
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                statements.add(statement());
+            return statements;
+        }
+
+        private Stmt statement() throws IOException {
+            switch (read()) {
+                case BLOCK: {
+                    int locals = read();
+                    int count = read();
+                    fits(count);
+                    List<Stmt> statements = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++)
+                        statements.add(statement());
+                    Stmt.Block block = new Stmt.Block(statements);
+                    block.locals = locals;
+                    return block;
+                }
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case PRINT:
+                    return new Stmt.Print(expression());
+                case VAR: {
+                    Token name = token();
+                    int slot = read();
+                    Expr initializer = read() == 1 ? expression() : null;
+                    Stmt.Var var = new Stmt.Var(name, initializer);
+                    var.slot = slot;
+                    if (slot < 0)
+                        var.global = symbols.intern(name.lexeme());
+                    return var;
+                }
+            }
+            throw new IOException("bad statement tag");
+        }
+
+        private Expr expression() throws IOException {
+            int tag = read();
+            boolean numeric = read() == 1;
+            Expr expr;
+            switch (tag) {
+                case ASSIGN: {
+                    Token name = token();
+                    int depth = read();
+                    int slot = read();
+                    Expr.Assign assign = new Expr.Assign(name, expression());
+                    assign.depth = depth;
+                    assign.slot = slot;
+                    if (depth < 0)
+                        assign.global = symbols.intern(name.lexeme());
+                    expr = assign;
+                    break;
+                }
+                case BINARY: {
+                    Expr left = expression();
+                    Token operator = token();
+                    expr = new Expr.Binary(left, operator, expression());
+                    break;
+                }
+                case GROUPING:
+                    expr = new Expr.Grouping(expression());
+                    break;
+                case LITERAL:
+                    expr = new Expr.Literal(value());
+                    break;
+                case UNARY: {
+                    Token operator = token();
+                    expr = new Expr.Unary(operator, expression());
+                    break;
+                }
+                case VARIABLE: {
+                    Expr.Variable variable = new Expr.Variable(token());
+                    variable.depth = read();
+                    variable.slot = read();
+                    if (variable.depth < 0)
+                        variable.global = symbols.intern(variable.name.lexeme());
+                    expr = variable;
+                    break;
+                }
+                default:
+                    throw new IOException("bad expression tag");
+            }
+            expr.numeric = numeric;
+            return expr;
+        }
+
+        private Token token() throws IOException {
+            TokenType type = types[read()];
+            String lexeme = string();
+            Object literal = value();
+            return new Token(type, lexeme, literal, read());
+        }
+
+        private Object value() throws IOException {
+            switch (read()) {
+                case NIL:    return null;
+                case TRUE:   return true;
+                case FALSE:  return false;
+                case NUMBER: take(8); return in.readDouble();
+                case STRING: return string();
+            }
+            throw new IOException("bad value tag");
+        }
+
+        private String string() throws IOException {
+            int index = read();
+            if (index > 0)
+                return strings.get(index - 1);
+
+            int length = read();
+            fits(length);
+            take(length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(text);
+            return text;
+        }
+
+        private int read() throws IOException {
+            int bits = 0;
+            for (int shift = 0; ; shift += 7) {
+                take(1);
+                int b = in.readUnsignedByte();
+                bits |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return bits - 1;
+            }
+        }
+
+        // a length or count from the entry. every byte or node in it takes
+        // at least a byte, so one bigger than what's left is damage, found
+        // before anything gets allocated for it
+        private void fits(int count) {
+            if (count < 0 || count > left)
+                throw new CacheException("length " + count + " with " + left + " bytes left");
+        }
+
+        private void take(int bytes) {
+            if (bytes > left)
+                throw new CacheException("entry ends early");
+            left -= bytes;
+        }
+    }
+
+    // IOException can't get out of a visitor, so it's carried out in this
+    private static class CacheException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CacheException(IOException cause) {
+            super(cause);
+        }
+
+        CacheException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// a REPL per connection on a local socket. every session is a LoxEngine
+// context of its own (globals, errors, output) running on a virtual thread,
+// so an idle session is a parked thread and a few small buffers, not an OS
+// thread. on a JVM older than 21 it falls back to a platform thread each.
+// each session gets an engine of its own too, so the global names it used
+// are let go of when it ends rather than kept for the server's lifetime
+class SessionServer {
+    // per session buffers. sessions are mostly idle and send short lines
+    private static final int INPUT_BUFFER  = 256;
+    private static final int OUTPUT_BUFFER = 512;
+    private static final int BACKLOG = 1024;
+    // longest line a session may send. past this it's hung up on, rather
+    // than buffering whatever a client sends without a newline until the
+    // whole server runs out of memory
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final int port;
+
+    SessionServer(int port) {
+        this.port = port;
+    }
+
+    void serve() throws IOException {
+        ExecutorService sessions = sessionExecutor();
+        try (ServerSocket server = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress())) {
+            System.err.println("listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                sessions.execute(() -> session(socket));
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when the JVM has it.
+    // looked up at runtime so this still builds and runs on older JDKs
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void session(Socket socket) {
+        try (Socket connection = socket) {
+            InputStream in = new BufferedInputStream(connection.getInputStream(), INPUT_BUFFER);
+            Writer out = new SocketWriter(connection.getOutputStream());
+            LoxEngine.Context context = new LoxEngine(0).newContext(out, out, OUTPUT_BUFFER);
+
+            while (true) {
+                out.write("> ");
+                out.flush();
+                String line;
+                try {
+                    line = readLine(in);
+                } catch (LineTooLongException e) {
+                    out.write("Line longer than " + MAX_LINE + " bytes, closing.\n");
+                    out.flush();
+                    return;
+                }
+                if (line == null) // client hung up
+                    return;
+                context.run(line);
+            }
+        } catch (IOException e) {
+            // connection dropped, nothing to clean up but the socket
+        }
+    }
+
+    // a line of UTF-8 without its terminator, null at end of stream.
+    // not a BufferedReader, which would hold 16K of buffers per session
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0)
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            if (line.size() == MAX_LINE)
+                throw new LineTooLongException();
+            line.write(b);
+        }
+
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static class LineTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // UTF-8 straight onto the socket. OutputStreamWriter would keep an 8K
+    // encode buffer per session; the Interpreter already batches prints
+    private static class SocketWriter extends Writer {
+        private final OutputStream out;
+
+        SocketWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            out.write(new String(chars, offset, length).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
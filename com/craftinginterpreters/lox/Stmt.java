@@ -14,15 +14,28 @@ abstract class Stmt {
         R visitVarStmt(Var stmt);
     }
 
+    interface IntVisitor {
+        int visitBlockStmt(Block stmt);
+        int visitExpressionStmt(Expression stmt);
+        int visitPrintStmt(Print stmt);
+        int visitVarStmt(Var stmt);
+    }
+
     abstract <R> R accept(Visitor<R> vistor);
+    abstract int accept(IntVisitor visitor);
 
     static class Block extends Stmt {
         final List<Stmt> statements;
+        int locals;
 
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitBlockStmt(this);
+        }
+
         Block(List<Stmt> statements) {
             this.statements = statements;
         }
@@ -35,6 +48,10 @@ abstract class Stmt {
             return visitor.visitExpressionStmt(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitExpressionStmt(this);
+        }
+
         Expression(Expr expression) {
             this.expression = expression;
         }
@@ -47,6 +64,10 @@ abstract class Stmt {
             return visitor.visitPrintStmt(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitPrintStmt(this);
+        }
+
         Print(Expr expression) {
             this.expression = expression;
         }
@@ -55,11 +76,17 @@ abstract class Stmt {
     static class Var extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
+        int global = -1;
 
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
 
+        int accept(IntVisitor visitor) {
+            return visitor.visitVarStmt(this);
+        }
+
         Var(Token name, Expr initializer) {
             this.name = name;
             this.initializer = initializer;
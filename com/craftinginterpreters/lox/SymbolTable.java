@@ -0,0 +1,27 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// numbers every global name, in the order they're first seen. the Resolver
+// stores the number in the tree and the Interpreter finds the global by
+// it, so running a program never hashes a name. each LoxEngine has one,
+// shared by its contexts so a tree resolved with it works in any of them,
+// and it goes when the engine does. the command line has its own.
+// safe to use from many threads at once
+final class SymbolTable {
+    private final ConcurrentHashMap<String, Integer> numbers = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    int intern(String name) {
+        Integer number = numbers.get(name);
+        if (number != null)
+            return number;
+        return numbers.computeIfAbsent(name, key -> next.getAndIncrement());
+    }
+
+    // how many names there are so far
+    int size() {
+        return next.get();
+    }
+}
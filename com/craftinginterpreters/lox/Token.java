@@ -2,9 +2,9 @@ package com.craftinginterpreters.lox;
 
 class Token {
   final TokenType type;
-  final String lexeme;
+  private String lexeme; // null for a NUMBER that prints as its literal
   final Object literal;
-  final int line; 
+  int line; // IncrementalParser moves tokens down when lines go in above
 
   Token(TokenType type, String lexeme, Object literal, int line) {
     this.type = type;
@@ -13,7 +13,15 @@ class Token {
     this.line = line;
   }
 
+  // a number's text is only made if something asks for it, see
+  // Scanner.number()
+  String lexeme() {
+    if (lexeme == null)
+      lexeme = NumberFormatter.toString((Double) literal);
+    return lexeme;
+  }
+
   public String toString() {
-    return type + " " + lexeme + " " + literal;
+    return type + " " + lexeme() + " " + literal;
   }
 }
@@ -0,0 +1,215 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.Chunk.*;
+
+// stack based virtual machine that runs a Chunk from the Compiler.
+// has to behave exactly like the tree walking Interpreter, down to the
+// error messages, so the checks below mirror the ones in there
+class VM {
+    private final Map<String, Object> globals = new HashMap<>();
+    private Object[] stack = new Object[256];
+    private int top = 0;
+
+    private Chunk chunk;
+    private int ip;
+
+    // buffered like the Interpreter's, see there
+    private final PrintWriter out;
+    private final NumberFormatter numbers = new NumberFormatter();
+    private final ErrorReporter reporter;
+
+    VM(ErrorReporter reporter) {
+        this(new OutputStreamWriter(System.out), reporter);
+    }
+
+    VM(Writer output, ErrorReporter reporter) {
+        this.out = new PrintWriter(new BufferedWriter(output, Interpreter.OUTPUT_BUFFER), false);
+        this.reporter = reporter;
+    }
+
+    void interpret(Chunk chunk) {
+        this.chunk = chunk;
+        this.ip = 0;
+        this.top = 0;
+        try {
+            run();
+        } catch (RuntimeError error) {
+            out.flush();
+            reporter.runtimeError(error);
+        } finally {
+            out.flush();
+        }
+    }
+
+    private void run() {
+        byte[] code = chunk.code;
+        Object[] constants = chunk.constants.toArray();
+
+        while (true) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OP_CONSTANT:
+                    push(constants[readShort()]);
+                    break;
+                case OP_NIL:   push(null);  break;
+                case OP_TRUE:  push(true);  break;
+                case OP_FALSE: push(false); break;
+                case OP_POP:
+                    top--;
+                    stack[top] = null;
+                    break;
+                case OP_POPN: {
+                    int count = readShort();
+                    Arrays.fill(stack, top - count, top, null);
+                    top -= count;
+                    break;
+                }
+                case OP_GET_LOCAL:
+                    push(stack[readShort()]);
+                    break;
+                case OP_SET_LOCAL:
+                    stack[readShort()] = stack[top - 1];
+                    break;
+                case OP_DEFINE_GLOBAL:
+                    globals.put((String) constants[readShort()], pop());
+                    break;
+                case OP_GET_GLOBAL: {
+                    String name = (String) constants[readShort()];
+                    if (!globals.containsKey(name))
+                        throw error("Undefined variable '" + name + "'.", name);
+                    push(globals.get(name));
+                    break;
+                }
+                case OP_SET_GLOBAL: {
+                    String name = (String) constants[readShort()];
+                    if (!globals.containsKey(name))
+                        throw error("Undefined variable '" + name + "'", name);
+                    globals.put(name, stack[top - 1]);
+                    break;
+                }
+                case OP_EQUAL: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push(Interpreter.isEqual(a, b));
+                    break;
+                }
+                case OP_NOT_EQUAL: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push(!Interpreter.isEqual(a, b));
+                    break;
+                }
+                case OP_GREATER: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a > (double) b);
+                    break;
+                }
+                case OP_GREATER_EQUAL: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a >= (double) b);
+                    break;
+                }
+                case OP_LESS: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a < (double) b);
+                    break;
+                }
+                case OP_LESS_EQUAL: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a <= (double) b);
+                    break;
+                }
+                case OP_ADD: {
+                    Object b = pop(), a = pop();
+                    if (a instanceof Double && b instanceof Double)
+                        push((double) a + (double) b);
+                    else if (a instanceof CharSequence && b instanceof CharSequence)
+                        push(Rope.concat((CharSequence) a, (CharSequence) b));
+                    else
+                        throw error("Operands must be two numbers or two strings");
+                    break;
+                }
+                case OP_SUBTRACT: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a - (double) b);
+                    break;
+                }
+                case OP_MULTIPLY: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a * (double) b);
+                    break;
+                }
+                case OP_DIVIDE: {
+                    Object b = pop(), a = pop();
+                    checkNumberOperands(a, b);
+                    push((double) a / (double) b);
+                    break;
+                }
+                case OP_NOT:
+                    push(!Interpreter.isTruthy(pop()));
+                    break;
+                case OP_NEGATE: {
+                    Object a = pop();
+                    if (!(a instanceof Double))
+                        throw error("Operand must be a number.");
+                    push(-(double) a);
+                    break;
+                }
+                case OP_PRINT:
+                    numbers.println(pop(), out);
+                    break;
+                case OP_RETURN:
+                    return;
+            }
+        }
+    }
+
+    private int readShort() {
+        int value = chunk.readShort(ip);
+        ip += 2;
+        return value;
+    }
+
+    private void push(Object value) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--top];
+        stack[top] = null;
+        return value;
+    }
+
+    private void checkNumberOperands(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double)
+            return;
+        throw error("Operands must be a number.");
+    }
+
+    // the chunk only knows lines, so build a token for the error report
+    private RuntimeError error(String message) {
+        return error(message, "");
+    }
+
+    private RuntimeError error(String message, String lexeme) {
+        int line = chunk.lines[ip - 1];
+        return new RuntimeError(
+                new Token(TokenType.IDENTIFIER, lexeme, null, line), message);
+    }
+}
@@ -2,6 +2,7 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -19,26 +20,39 @@ public class GenerateAst {
         String outputDir = args[0];
 
         /* java metaprogramming */
+        // fields after a '|' are filled in by the Resolver, not the Parser
+        // (binding is the Interpreter's inline cache, filled in at runtime)
+        // the last three are never parsed. NodeFuser builds them out of
+        // the others and keeps what they replaced in original
         // expressions 
-        defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
+        List<String> exprTypes = Arrays.asList(
+            "Assign   : Token name, Expr value | int depth = -1, int slot, int global = -1, Environment.Binding binding",
             "Binary   : Expr left, Token operator, Expr right",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Unary    : Token operator, Expr right",
-            "Variable : Token name"
-        ));
+            "Variable : Token name | int depth = -1, int slot, int global = -1, Environment.Binding binding",
+            "VariableConstant : Expr.Variable variable, Token operator, double constant, Expr original",
+            "VariableVariable : Expr.Variable left, Token operator, Expr.Variable right, Expr original",
+            "Increment        : Expr.Variable variable, Token operator, double constant, Expr original"
+        );
+        defineAst(outputDir, "Expr", "boolean numeric", exprTypes);
 
         // statments
-        defineAst(outputDir, "Stmt", Arrays.asList(
-            "Block      : List<Stmt> statements",
+        List<String> stmtTypes = Arrays.asList(
+            "Block      : List<Stmt> statements | int locals",
             "Expression : Expr expression",
             "Print      : Expr expression",
-            "Var        : Token name, Expr initializer"
-        ));
+            "Var        : Token name, Expr initializer | int slot = -1, int global = -1"
+        );
+        defineAst(outputDir, "Stmt", "", stmtTypes);
+
+        // the same trees again, as a structure of arrays
+        defineFlatAst(outputDir, "boolean numeric", exprTypes, stmtTypes);
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> types)
+    private static void defineAst(String outputDir, String baseName,
+                                  String baseFields, List<String> types)
     throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
@@ -56,15 +70,28 @@ public class GenerateAst {
 
         defineVisitor(writer, baseName, types);
 
-        // abstract accept() method
+        // mutable fields shared by every subclass, set by the Resolver
+        if (!baseFields.isEmpty()) {
+            writer.println("");
+            for (String field : baseFields.split(", "))
+                writer.println(indent(field + ";", 1));
+        }
+
+        // abstract accept() methods
         writer.println("");
         writer.println(indent() + "abstract <R> R accept(Visitor<R> vistor);");
+        writer.println(indent() + "abstract int accept(IntVisitor visitor);");
 
         // each expression type extends Expr
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields    = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String resolved  = "";
+            if (fields.contains("|")) {
+                resolved = fields.split("\\|")[1].trim();
+                fields   = fields.split("\\|")[0].trim();
+            }
+            defineType(writer, baseName, className, fields, resolved);
         }    
 
         writer.println("}"); // end base class
@@ -82,12 +109,24 @@ public class GenerateAst {
                     "(" + typeName + " " + baseName.toLowerCase() + ");"); 
         }
         writer.println(indent() + "}");
+
+        // the same, returning an int without boxing it. for FlatAst's
+        // builder, where every node comes back as its index
+        writer.println("");
+        writer.println(indent() + "interface IntVisitor {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println(indent(2) + "int visit" + typeName + baseName +
+                    "(" + typeName + " " + baseName.toLowerCase() + ");");
+        }
+        writer.println(indent() + "}");
     }
 
     private static void defineType(PrintWriter writer, 
                                     String baseName, 
                                     String className, 
-                                    String fieldList) {
+                                    String fieldList,
+                                    String resolvedList) {
         // begin class
         writer.println();
         writer.println(indent() + "static class " + className + " extends " + baseName + " {");
@@ -98,12 +137,23 @@ public class GenerateAst {
             writer.println(indent("final " + field + ";", 2));
         }
 
+        // mutable fields, set after construction
+        if (!resolvedList.isEmpty()) {
+            for (String field : resolvedList.split(", ")) {
+                writer.println(indent(field + ";", 2));
+            }
+        }
+
         // visitor pattern
         writer.println();
         writer.println(indent(2) + "<R> R accept(Visitor<R> visitor) {");
         writer.println(indent(3) + "return visitor.visit" + className + baseName + "(this);");
         writer.println(indent(2) + "}");
         writer.println();
+        writer.println(indent(2) + "int accept(IntVisitor visitor) {");
+        writer.println(indent(3) + "return visitor.visit" + className + baseName + "(this);");
+        writer.println(indent(2) + "}");
+        writer.println();
 
         // Constructor.
         writer.println(indent(2) + className + "(" + fieldList + ") {");
@@ -117,6 +167,316 @@ public class GenerateAst {
         writer.println(indent() + "}"); // end class
     }
     
+    // FlatAst: every node is an int. its kind and where its fields start are
+    // in two int arrays, the fields themselves are ints in a third, shared
+    // one. child nodes and tokens are stored by index, tokens are split into
+    // int columns of their own and literal values go in a constants table.
+    // runtime caches (anything that isn't a node, token, value, list, int
+    // or boolean) have no place in it and are left out
+    private static void defineFlatAst(String outputDir, String exprBaseFields,
+                                      List<String> exprTypes, List<String> stmtTypes)
+    throws IOException {
+        String path = outputDir + "/FlatAst.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("/* autogenerated by com.craftinginterpreters.tool.GenerateAst");
+        writer.println(" * The Expr and Stmt trees laid out as a structure of arrays, so a");
+        writer.println(" * program is a handful of int arrays instead of an object per node");
+        writer.println(" */");
+        writer.println("package com.craftinginterpreters.lox;");
+        writer.println("");
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println("");
+        writer.println("final class FlatAst {");
+
+        // node kinds
+        writer.println(indent("// node kinds", 1));
+        int kind = 0;
+        for (String type : exprTypes)
+            writer.println(indent("static final int " + className(type).toUpperCase()
+                    + " = " + kind++ + ";", 1));
+        for (String type : stmtTypes)
+            writer.println(indent("static final int " + className(type).toUpperCase()
+                    + " = " + kind++ + ";", 1));
+
+        writer.println("");
+        writer.println(indent("private int[] kinds = new int[64];", 1));
+        writer.println(indent("private int[] first = new int[64]; // where a node's fields start", 1));
+        writer.println(indent("private int nodeCount = 0;", 1));
+        writer.println(indent("private int[] fields = new int[256];", 1));
+        writer.println(indent("private int fieldCount = 0;", 1));
+        writer.println(indent("private int[] lists = new int[64]; // a length, then that many nodes", 1));
+        writer.println(indent("private int listCount = 0;", 1));
+        writer.println("");
+        writer.println(indent("private int[] tokenTypes = new int[64];", 1));
+        writer.println(indent("private int[] tokenLexemes = new int[64];", 1));
+        writer.println(indent("private int[] tokenLines = new int[64];", 1));
+        writer.println(indent("private int tokenCount = 0;", 1));
+        writer.println(indent("private String[] strings;", 1));
+        writer.println(indent("private static final TokenType[] types = TokenType.values();", 1));
+        writer.println(indent("private Object[] constants;", 1));
+        writer.println("");
+        writer.println(indent("// list of the top-level statements", 1));
+        writer.println(indent("int statements;", 1));
+        writer.println("");
+        writer.println(indent("private FlatAst() {}", 1));
+        writer.println("");
+        writer.println(indent("static FlatAst of(List<Stmt> statements) {", 1));
+        writer.println(indent("FlatAst ast = new FlatAst();", 2));
+        writer.println(indent("Builder builder = new Builder(ast);", 2));
+        writer.println(indent("ast.statements = builder.list(statements);", 2));
+        writer.println(indent("builder.finish();", 2));
+        writer.println(indent("return ast;", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("int kind(int node) {", 1));
+        writer.println(indent("return kinds[node];", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("int size(int list) {", 1));
+        writer.println(indent("return lists[list];", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("int get(int list, int index) {", 1));
+        writer.println(indent("return lists[list + 1 + index];", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("TokenType type(int token) {", 1));
+        writer.println(indent("return types[tokenTypes[token]];", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("String lexeme(int token) {", 1));
+        writer.println(indent("return strings[tokenLexemes[token]];", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("// a real Token, only made when one is needed for an error", 1));
+        writer.println(indent("Token token(int token) {", 1));
+        writer.println(indent("return new Token(type(token),", 2));
+        writer.println(indent("lexeme(token), null, tokenLines[token]);", 4));
+        writer.println(indent("}", 1));
+
+        // field accessors, named after the node and the field
+        if (!exprBaseFields.isEmpty()) {
+            String[] base = exprBaseFields.split(", ");
+            for (int i = 0; i < base.length; i++)
+                defineFlatAccessor(writer, base[i].split(" ")[0], base[i].split(" ")[1], i);
+        }
+        for (String type : exprTypes)
+            defineFlatAccessors(writer, type, exprBaseFields);
+        for (String type : stmtTypes)
+            defineFlatAccessors(writer, type, "");
+
+        defineFlatVisitor(writer, "Expr", exprTypes);
+        defineFlatVisitor(writer, "Stmt", stmtTypes);
+
+        // storage
+        writer.println("");
+        writer.println(indent("private int add(int kind, int count) {", 1));
+        writer.println(indent("if (nodeCount == kinds.length) {", 2));
+        writer.println(indent("kinds = Arrays.copyOf(kinds, nodeCount * 2);", 3));
+        writer.println(indent("first = Arrays.copyOf(first, nodeCount * 2);", 3));
+        writer.println(indent("}", 2));
+        writer.println(indent("while (fieldCount + count > fields.length)", 2));
+        writer.println(indent("fields = Arrays.copyOf(fields, fields.length * 2);", 3));
+        writer.println(indent("kinds[nodeCount] = kind;", 2));
+        writer.println(indent("first[nodeCount] = fieldCount;", 2));
+        writer.println(indent("fieldCount += count;", 2));
+        writer.println(indent("return nodeCount++;", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("private void set(int node, int field, int value) {", 1));
+        writer.println(indent("fields[first[node] + field] = value;", 2));
+        writer.println(indent("}", 1));
+
+        // builder, from the object trees
+        writer.println("");
+        writer.println(indent("private static class Builder implements Expr.IntVisitor, Stmt.IntVisitor {", 1));
+        writer.println(indent("private final FlatAst ast;", 2));
+        writer.println(indent("private final Map<String, Integer> strings = new HashMap<>();", 2));
+        writer.println(indent("private final List<Object> constants = new ArrayList<>();", 2));
+        writer.println("");
+        writer.println(indent("Builder(FlatAst ast) {", 2));
+        writer.println(indent("this.ast = ast;", 3));
+        writer.println(indent("}", 2));
+        for (String type : exprTypes)
+            defineFlatBuild(writer, "Expr", type, exprBaseFields);
+        for (String type : stmtTypes)
+            defineFlatBuild(writer, "Stmt", type, "");
+        writer.println("");
+        writer.println(indent("private int node(Expr expr) {", 2));
+        writer.println(indent("return expr == null ? -1 : expr.accept(this);", 3));
+        writer.println(indent("}", 2));
+        writer.println("");
+        writer.println(indent("private int node(Stmt stmt) {", 2));
+        writer.println(indent("return stmt == null ? -1 : stmt.accept(this);", 3));
+        writer.println(indent("}", 2));
+        writer.println("");
+        writer.println(indent("// children first, then the list itself in one piece", 2));
+        writer.println(indent("int list(List<?> items) {", 2));
+        writer.println(indent("int[] nodes = new int[items.size()];", 3));
+        writer.println(indent("for (int i = 0; i < nodes.length; i++) {", 3));
+        writer.println(indent("Object item = items.get(i);", 4));
+        writer.println(indent("nodes[i] = item instanceof Expr ? node((Expr) item) : node((Stmt) item);", 4));
+        writer.println(indent("}", 3));
+        writer.println(indent("while (ast.listCount + nodes.length + 1 > ast.lists.length)", 3));
+        writer.println(indent("ast.lists = Arrays.copyOf(ast.lists, ast.lists.length * 2);", 4));
+        writer.println(indent("int list = ast.listCount;", 3));
+        writer.println(indent("ast.lists[list] = nodes.length;", 3));
+        writer.println(indent("System.arraycopy(nodes, 0, ast.lists, list + 1, nodes.length);", 3));
+        writer.println(indent("ast.listCount += nodes.length + 1;", 3));
+        writer.println(indent("return list;", 3));
+        writer.println(indent("}", 2));
+        writer.println("");
+        writer.println(indent("private int token(Token token) {", 2));
+        writer.println(indent("if (ast.tokenCount == ast.tokenTypes.length) {", 3));
+        writer.println(indent("int size = ast.tokenCount * 2;", 4));
+        writer.println(indent("ast.tokenTypes   = Arrays.copyOf(ast.tokenTypes, size);", 4));
+        writer.println(indent("ast.tokenLexemes = Arrays.copyOf(ast.tokenLexemes, size);", 4));
+        writer.println(indent("ast.tokenLines   = Arrays.copyOf(ast.tokenLines, size);", 4));
+        writer.println(indent("}", 3));
+        writer.println(indent("ast.tokenTypes[ast.tokenCount]   = token.type.ordinal();", 3));
+        writer.println(indent("ast.tokenLexemes[ast.tokenCount] = strings.computeIfAbsent(token.lexeme(), lexeme -> strings.size());", 3));
+        writer.println(indent("ast.tokenLines[ast.tokenCount]   = token.line;", 3));
+        writer.println(indent("return ast.tokenCount++;", 3));
+        writer.println(indent("}", 2));
+        writer.println("");
+        writer.println(indent("private int constant(Object value) {", 2));
+        writer.println(indent("constants.add(value);", 3));
+        writer.println(indent("return constants.size() - 1;", 3));
+        writer.println(indent("}", 2));
+        writer.println("");
+        writer.println(indent("// trim everything to size", 2));
+        writer.println(indent("void finish() {", 2));
+        writer.println(indent("ast.kinds        = Arrays.copyOf(ast.kinds, ast.nodeCount);", 3));
+        writer.println(indent("ast.first        = Arrays.copyOf(ast.first, ast.nodeCount);", 3));
+        writer.println(indent("ast.fields       = Arrays.copyOf(ast.fields, ast.fieldCount);", 3));
+        writer.println(indent("ast.lists        = Arrays.copyOf(ast.lists, ast.listCount);", 3));
+        writer.println(indent("ast.tokenTypes   = Arrays.copyOf(ast.tokenTypes, ast.tokenCount);", 3));
+        writer.println(indent("ast.tokenLexemes = Arrays.copyOf(ast.tokenLexemes, ast.tokenCount);", 3));
+        writer.println(indent("ast.tokenLines   = Arrays.copyOf(ast.tokenLines, ast.tokenCount);", 3));
+        writer.println(indent("ast.strings = new String[strings.size()];", 3));
+        writer.println(indent("for (Map.Entry<String, Integer> string : strings.entrySet())", 3));
+        writer.println(indent("ast.strings[string.getValue()] = string.getKey();", 4));
+        writer.println(indent("ast.constants = constants.toArray();", 3));
+        writer.println(indent("}", 2));
+        writer.println(indent("}", 1));
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static String className(String type) {
+        return type.split(":")[0].trim();
+    }
+
+    // base fields, then the Parser's, then the Resolver's, minus anything
+    // the flat layout can't hold
+    private static List<String> flatFields(String type, String baseFields) {
+        List<String> all = new ArrayList<>();
+        String fields = type.split(":")[1].replace("|", ",");
+        if (!baseFields.isEmpty())
+            fields = baseFields + ", " + fields;
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            if (field.isEmpty())
+                continue;
+            field = field.split("=")[0].trim(); // drop initializers
+            String fieldType = field.split(" ")[0];
+            switch (fieldType) {
+                case "Expr": case "Stmt": case "Token": case "Object":
+                case "List<Stmt>": case "List<Expr>": case "int": case "boolean":
+                    all.add(field);
+            }
+        }
+        return all;
+    }
+
+    // base fields come first in every kind, so one accessor serves them all
+    private static void defineFlatAccessors(PrintWriter writer, String type, String baseFields) {
+        String className = className(type);
+        List<String> fields = flatFields(type, baseFields);
+        int base = baseFields.isEmpty() ? 0 : baseFields.split(", ").length;
+        for (int i = base; i < fields.size(); i++) {
+            String name = fields.get(i).split(" ")[1];
+            defineFlatAccessor(writer, fields.get(i).split(" ")[0],
+                    Character.toLowerCase(className.charAt(0)) + className.substring(1)
+                    + Character.toUpperCase(name.charAt(0)) + name.substring(1), i);
+        }
+    }
+
+    private static void defineFlatAccessor(PrintWriter writer, String fieldType,
+                                           String accessor, int index) {
+        String slot = "fields[first[node]" + (index == 0 ? "" : " + " + index) + "]";
+        writer.println("");
+        switch (fieldType) {
+            case "Object":
+                writer.println(indent("Object " + accessor + "(int node) {", 1));
+                writer.println(indent("return constants[" + slot + "];", 2));
+                break;
+            case "boolean":
+                writer.println(indent("boolean " + accessor + "(int node) {", 1));
+                writer.println(indent("return " + slot + " != 0;", 2));
+                break;
+            default: // a node, token or list index, or a plain int
+                writer.println(indent("int " + accessor + "(int node) {", 1));
+                writer.println(indent("return " + slot + ";", 2));
+        }
+        writer.println(indent("}", 1));
+    }
+
+    private static void defineFlatVisitor(PrintWriter writer, String baseName, List<String> types) {
+        writer.println("");
+        writer.println(indent("interface " + baseName + "Visitor<R> {", 1));
+        for (String type : types)
+            writer.println(indent("R visit" + className(type) + "(int node);", 2));
+        writer.println(indent("}", 1));
+        writer.println("");
+        writer.println(indent("<R> R accept(int node, " + baseName + "Visitor<R> visitor) {", 1));
+        writer.println(indent("switch (kinds[node]) {", 2));
+        for (String type : types)
+            writer.println(indent("case " + className(type).toUpperCase() + ": return visitor.visit"
+                    + className(type) + "(node);", 3));
+        writer.println(indent("}", 2));
+        writer.println(indent("throw new IllegalArgumentException(\"unexpected kind \" + kinds[node]", 2));
+        writer.println(indent("+ \" for " + baseName + "Visitor\");", 4));
+        writer.println(indent("}", 1));
+    }
+
+    private static void defineFlatBuild(PrintWriter writer, String baseName,
+                                        String type, String baseFields) {
+        String className = className(type);
+        String var = baseName.toLowerCase();
+        List<String> fields = flatFields(type, baseFields);
+
+        writer.println("");
+        writer.println(indent("@Override", 2));
+        writer.println(indent("public int visit" + className + baseName + "("
+                + baseName + "." + className + " " + var + ") {", 2));
+        writer.println(indent("int node = ast.add(" + className.toUpperCase() + ", "
+                + fields.size() + ");", 3));
+        for (int i = 0; i < fields.size(); i++) {
+            String fieldType = fields.get(i).split(" ")[0];
+            String value = var + "." + fields.get(i).split(" ")[1];
+            switch (fieldType) {
+                case "Expr": case "Stmt":  value = "node(" + value + ")"; break;
+                case "Token":              value = "token(" + value + ")"; break;
+                case "Object":             value = "constant(" + value + ")"; break;
+                case "boolean":            value = value + " ? 1 : 0"; break;
+                case "int":                break;
+                default:                   value = "list(" + value + ")"; // a List
+            }
+            // set() is a call so a child that grows the arrays is finished
+            // before the parent's field gets written
+            writer.println(indent("ast.set(node, " + i + ", " + value + ");", 3));
+        }
+        writer.println(indent("return node;", 3));
+        writer.println(indent("}", 2));
+    }
+
     private static String indent(int times) {
         return indent("", times);
     }